@@ -0,0 +1,38 @@
+plugins {
+  id("java")
+  alias(libs.plugins.jmh)
+}
+
+repositories {
+  mavenCentral()
+  maven("https://repo.papermc.io/repository/maven-public/")
+  maven("https://jitpack.io")
+}
+
+dependencies {
+  jmh(project(":captchaplugin"))
+  jmh(libs.annotations)
+  jmh(libs.caffeine)
+  jmh(libs.zstd.jni)
+  jmh(libs.mockbukkit)
+  jmh(libs.sqlite.jdbc)
+  // Stands in for a shared MariaDB server.
+  jmh(libs.h2)
+}
+
+jmh {
+  // Report allocation rates alongside throughput.
+  profilers.add("gc")
+
+  // Synthetic data set size, i.e. ./gradlew :captchabenchmark:jmh -Precords=100000
+  val records = providers.gradleProperty("records")
+  if (records.isPresent) {
+    benchmarkParameters.put("records", objects.listProperty(String::class.java).value(listOf(records.get())))
+  }
+
+  // Benchmark subset, i.e. ./gradlew :captchabenchmark:jmh -Pbenchmarks=Hash
+  val benchmarks = providers.gradleProperty("benchmarks")
+  if (benchmarks.isPresent) {
+    includes.add(benchmarks.get())
+  }
+}
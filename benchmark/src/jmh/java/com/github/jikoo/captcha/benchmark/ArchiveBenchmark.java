@@ -0,0 +1,142 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.store.Archive;
+import com.github.jikoo.captcha.store.ArchivePack;
+import com.github.jikoo.captcha.store.CaptchaStore;
+import com.github.jikoo.captcha.store.StorageBackend;
+import com.github.jikoo.captcha.util.ItemFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Reads of records from live segment storage compared to reads of the same records from an
+ * archive pack.
+ *
+ * <p>Bytes on disk are printed during setup. Records are partly repetitive, as serialized items
+ * are, so that block compression has something to work with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveBenchmark {
+
+  private static final int RECORD_SIZE = 384;
+
+  @Param({"live", "archived"})
+  public String tier;
+
+  @Param({"100000"})
+  public int records;
+
+  private Path directory;
+  private CaptchaStore store;
+  private Archive archive;
+  private String[] hashes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("captcha-archive");
+    Logger logger = Logger.getLogger("ArchiveBenchmark");
+    store = StorageBackend.SEGMENT.create(directory, 64L * 1024L * 1024L, logger);
+    store.open();
+    archive = new Archive(directory.resolve("archive"), logger);
+    archive.open();
+
+    Random random = new Random(records);
+    byte[] template = new byte[RECORD_SIZE];
+    random.nextBytes(template);
+    hashes = new String[records];
+    byte[][] data = new byte[records][];
+    for (int i = 0; i < records; ++i) {
+      hashes[i] = hash(i);
+      data[i] = template.clone();
+      // Vary a small part of each record.
+      for (int j = 0; j < 16; ++j) {
+        data[i][random.nextInt(RECORD_SIZE)] = (byte) random.nextInt();
+      }
+    }
+
+    if (tier.equals("live")) {
+      for (int i = 0; i < records; ++i) {
+        store.write(hashes[i], data[i]);
+      }
+      store.sync();
+    } else {
+      Integer[] order = new Integer[records];
+      Arrays.setAll(order, i -> i);
+      Arrays.sort(order, Comparator.comparing(i -> hashes[i], ArchivePack.HASH_ORDER));
+      try (ArchivePack.Writer writer = archive.createPack()) {
+        for (int index : order) {
+          writer.add(hashes[index], data[index]);
+        }
+        archive.add(writer.finish());
+      }
+    }
+
+    long bytes;
+    try (Stream<Path> paths = Files.walk(directory)) {
+      bytes = paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+    }
+    System.out.printf("%n%s: %d bytes on disk, %.1f per record%n", tier, bytes, (double) bytes / records);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    archive.close();
+    store.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static String hash(long index) {
+    byte[] seed = new byte[Long.BYTES];
+    for (int i = 0; i < seed.length; ++i) {
+      seed[i] = (byte) (index >>> (i * 8));
+    }
+    return ItemFingerprint.of(seed).encode();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public byte[] get() throws IOException {
+    String hash = hashes[ThreadLocalRandom.current().nextInt(hashes.length)];
+    return tier.equals("live") ? store.get(hash) : archive.get(hash);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean containsMiss() throws IOException {
+    String hash = hash(-1 - ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+    return tier.equals("live") ? store.contains(hash) : archive.contains(hash);
+  }
+
+}
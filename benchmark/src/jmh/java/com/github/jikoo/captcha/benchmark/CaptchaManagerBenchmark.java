@@ -0,0 +1,129 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.CaptchaManager;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of {@link CaptchaManager}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptchaManagerBenchmark {
+
+  private static final int BATCH_SIZE = 64;
+
+  @Benchmark
+  public String calculateHashForItem(CaptchaState state) {
+    // Item is already stored, so this includes the collision check against the stored record.
+    return state.manager.calculateHashForItem(state.plain);
+  }
+
+  @Benchmark
+  public ItemStack getCaptchaForItem(CaptchaState state) {
+    return state.manager.getCaptchaForItem(state.plain);
+  }
+
+  @Benchmark
+  public ItemStack getCaptchaForHash(CaptchaState state) {
+    // Builds the card, including the lore and name set by setCaptchaContentsDisplay.
+    return state.manager.getCaptchaForHash(state.hash);
+  }
+
+  @Benchmark
+  public ItemStack getItemByHashWarm(CaptchaState state) {
+    return state.manager.getItemByHash(state.hash);
+  }
+
+  @Benchmark
+  public ItemStack getItemByHashCold(ColdCaptchaState state) {
+    // Both cache tiers are disabled, so every lookup reads and decodes the stored record.
+    String[] hashes = state.hashes;
+    return state.manager.getItemByHash(hashes[ThreadLocalRandom.current().nextInt(hashes.length)]);
+  }
+
+  @Benchmark
+  public Map<String, ItemStack> getItemsByHashBatch(CaptchaState state) {
+    // Compare with getItemByHashSequential over the same number of hashes.
+    return state.manager.getItemsByHash(randomHashes(state));
+  }
+
+  @Benchmark
+  public int getItemByHashSequential(CaptchaState state) {
+    int found = 0;
+    for (String hash : randomHashes(state)) {
+      if (state.manager.getItemByHash(hash) != null) {
+        ++found;
+      }
+    }
+    return found;
+  }
+
+  private static List<String> randomHashes(CaptchaState state) {
+    String[] hashes = state.hashes;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    List<String> batch = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; ++i) {
+      batch.add(hashes[random.nextInt(hashes.length)]);
+    }
+    return batch;
+  }
+
+  @Benchmark
+  public ItemStack getLoadedItemByHash(CaptchaState state) {
+    // The non-blocking check made on the main thread before falling back to an async load.
+    return state.manager.getLoadedItemByHash(state.hash);
+  }
+
+  @Benchmark
+  public ItemStack getItemByHashAsyncCold(ColdCaptchaState state) {
+    String[] hashes = state.hashes;
+    return state.manager.getItemByHashAsync(hashes[ThreadLocalRandom.current().nextInt(hashes.length)]).join();
+  }
+
+  @Benchmark
+  public boolean isCaptchaCard(CaptchaState state) {
+    return CaptchaManager.isCaptcha(state.depthOne);
+  }
+
+  @Benchmark
+  public boolean isCaptchaPlain(CaptchaState state) {
+    return CaptchaManager.isCaptcha(state.plain);
+  }
+
+  @Benchmark
+  public boolean isUsedCaptchaCard(CaptchaState state) {
+    return CaptchaManager.isUsedCaptcha(state.depthOne);
+  }
+
+  @Benchmark
+  public boolean isUsedCaptchaBlank(CaptchaState state) {
+    return CaptchaManager.isUsedCaptcha(state.blank);
+  }
+
+  @Benchmark
+  public int getCaptchaDepthOne(CaptchaState state) {
+    return state.manager.getCaptchaDepth(state.depthOne);
+  }
+
+  @Benchmark
+  public int getCaptchaDepthTwo(CaptchaState state) {
+    return state.manager.getCaptchaDepth(state.depthTwo);
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.CaptchaManager;
+import com.github.jikoo.captcha.CaptchaPlugin;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Objects;
+
+/**
+ * A MockBukkit server with the plugin enabled and a synthetic store of captchacard contents.
+ */
+@State(Scope.Benchmark)
+public class CaptchaState {
+
+  private static final Material[] MATERIALS = {
+      Material.STONE,
+      Material.DIRT,
+      Material.COBBLESTONE,
+      Material.OAK_LOG,
+      Material.IRON_INGOT,
+      Material.REDSTONE,
+      Material.GLASS,
+      Material.SAND
+  };
+
+  /** Number of synthetic records in the store. */
+  @Param("1000")
+  public int records;
+
+  public CaptchaManager manager;
+  /** An item that is already stored. */
+  public ItemStack plain;
+  /** A card containing {@link #plain}. */
+  public ItemStack depthOne;
+  /** A card containing a stack of {@link #depthOne}. */
+  public ItemStack depthTwo;
+  /** A blank card. */
+  public ItemStack blank;
+  /** The hash of {@link #depthOne}. */
+  public String hash;
+  /** Hashes of all synthetic records. */
+  public String[] hashes;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    MockBukkit.mock();
+    manager = MockBukkit.load(CaptchaPlugin.class).getCaptchaManager();
+
+    hashes = new String[records];
+    for (int i = 0; i < records; ++i) {
+      ItemStack card = Objects.requireNonNull(manager.getCaptchaForItem(createItem(i)));
+      hashes[i] = CaptchaManager.getHashFromCaptcha(card);
+    }
+
+    plain = createItem(0);
+    depthOne = Objects.requireNonNull(manager.getCaptchaForItem(plain));
+    hash = CaptchaManager.getHashFromCaptcha(depthOne);
+
+    ItemStack depthOneStack = depthOne.clone();
+    depthOneStack.setAmount(depthOneStack.getMaxStackSize());
+    depthTwo = Objects.requireNonNull(manager.getCaptchaForItem(depthOneStack));
+
+    blank = manager.newBlankCaptcha();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    MockBukkit.unmock();
+  }
+
+  private static @NotNull ItemStack createItem(int index) {
+    ItemStack itemStack = ItemStack.of(MATERIALS[index % MATERIALS.length], 64);
+    itemStack.editMeta(meta -> meta.customName(Component.text("Synthetic " + index)));
+    return itemStack;
+  }
+
+}
@@ -0,0 +1,91 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.CaptchaConfig;
+import com.github.jikoo.captcha.CaptchaManager;
+import com.github.jikoo.captcha.CaptchaPlugin;
+import com.github.jikoo.captcha.util.lang.ComponentLangManager;
+import com.github.jikoo.captcha.util.lang.Messages;
+import com.github.jikoo.planarwrappers.lang.Message;
+import com.github.jikoo.planarwrappers.lang.PluginLocaleProvider;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Material;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * A {@link CaptchaManager} with both the decoded and serialized caches shrunk to nothing, so that
+ * lookups read from the store.
+ */
+@State(Scope.Benchmark)
+public class ColdCaptchaState {
+
+  /** Number of synthetic records in the store. */
+  @Param("1000")
+  public int records;
+
+  public CaptchaManager manager;
+  /** Hashes of all synthetic records. */
+  public String[] hashes;
+
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    MockBukkit.mock();
+    CaptchaPlugin plugin = MockBukkit.load(CaptchaPlugin.class);
+
+    MemoryConfiguration config = new MemoryConfiguration();
+    config.set("cache.decoded.max-entries", 1);
+    config.set("cache.decoded.warm-start", false);
+    config.set("cache.serialized.max-size-mb", 0);
+    ComponentLangManager lang = new ComponentLangManager(
+        new PluginLocaleProvider(plugin) {
+          @Override
+          public @NotNull Iterable<@NotNull Message> getMessages() {
+            return Messages.getMessages();
+          }
+        }
+    );
+    directory = Files.createTempDirectory("captcha-cold");
+    manager = new CaptchaManager(directory, new CaptchaConfig(config), lang, plugin.getLogger());
+
+    hashes = new String[records];
+    for (int i = 0; i < records; ++i) {
+      ItemStack card = Objects.requireNonNull(manager.getCaptchaForItem(createItem(i)));
+      hashes[i] = CaptchaManager.getHashFromCaptcha(card);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    manager.close();
+    MockBukkit.unmock();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static @NotNull ItemStack createItem(int index) {
+    ItemStack itemStack = ItemStack.of(Material.STONE, 64);
+    itemStack.editMeta(meta -> meta.customName(Component.text("Synthetic " + index)));
+    return itemStack;
+  }
+
+}
@@ -0,0 +1,132 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.store.CaptchaRecord;
+import com.github.jikoo.captcha.store.CompressedStore;
+import com.github.jikoo.captcha.store.MemoryStore;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stored records with and without dictionary compression.
+ *
+ * <p>Bytes stored per record are printed during setup. Reads include repacking the item as GZIP,
+ * but not deserializing it, which costs the same for both formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+  private static final int RECORDS = 10_000;
+  private static final int DATA_VERSION = 4325;
+
+  @Param({"plain", "compressed"})
+  public String format;
+
+  private MemoryStore backing;
+  private CompressedStore store;
+  private String[] hashes;
+  private byte[][] records;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    MockBukkit.mock();
+    List<Material> materials = Arrays.stream(Material.values())
+        .filter(material -> material.isItem() && !material.isAir() && !material.isLegacy())
+        .toList();
+    Random random = new Random(RECORDS);
+
+    boolean compressed = format.equals("compressed");
+    backing = new MemoryStore();
+    store = new CompressedStore(backing, compressed, 3, Logger.getLogger("CompressionBenchmark"));
+    store.open();
+
+    hashes = new String[RECORDS];
+    records = new byte[RECORDS][];
+    Map<String, byte[]> all = new HashMap<>();
+    for (int i = 0; i < RECORDS; ++i) {
+      hashes[i] = "record" + i;
+      records[i] = new CaptchaRecord(createItem(materials, random, i).serializeAsBytes(), null, DATA_VERSION).encode();
+      all.put(hashes[i], records[i]);
+    }
+    store.replaceAll(all);
+
+    if (compressed) {
+      byte[] dictionary = store.trainDictionary();
+      if (dictionary == null) {
+        throw new IllegalStateException("Too few samples to train a dictionary");
+      }
+      store.installDictionary(dictionary);
+      // Rewrite everything now that compression is possible.
+      store.replaceAll(all);
+    }
+
+    long bytes = 0;
+    for (String hash : hashes) {
+      bytes += backing.get(hash).length;
+    }
+    System.out.printf("%n%s: %d bytes stored, %.1f per record%n", format, bytes, (double) bytes / RECORDS);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    store.close();
+    MockBukkit.unmock();
+  }
+
+  private static @NotNull ItemStack createItem(@NotNull List<Material> materials, @NotNull Random random, int index) {
+    Material material = materials.get(random.nextInt(materials.size()));
+    ItemStack itemStack = ItemStack.of(material, Math.min(material.getMaxStackSize(), 1 + random.nextInt(64)));
+    // Mostly plain stacks, with some named and enchanted ones for variety.
+    if (random.nextInt(4) == 0) {
+      itemStack.editMeta(meta -> meta.customName(Component.text("Synthetic " + index)));
+    }
+    if (random.nextInt(8) == 0) {
+      itemStack.addUnsafeEnchantment(Enchantment.UNBREAKING, 1 + random.nextInt(3));
+    }
+    return itemStack;
+  }
+
+  @Benchmark
+  public byte[] read() throws IOException {
+    return store.get(hashes[ThreadLocalRandom.current().nextInt(RECORDS)]);
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    // Rewrites identical contents so that the store does not grow during measurement.
+    int index = ThreadLocalRandom.current().nextInt(RECORDS);
+    store.replace(hashes[index], records[index]);
+  }
+
+}
@@ -0,0 +1,100 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.CaptchaManager;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent captures as seen on Folia, where region threads share a single {@link CaptchaManager}.
+ *
+ * <p>Every returned hash is checked against the item it was created for. The run fails if two
+ * different items are ever assigned the same hash or an item cannot be read back.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ConcurrentCaptureBenchmark {
+
+  /** Captured contents by hash, shared by all threads. */
+  @State(Scope.Benchmark)
+  public static class Claims {
+
+    final Map<String, ItemStack> byHash = new ConcurrentHashMap<>();
+    final AtomicInteger next = new AtomicInteger();
+
+    void verify(@NotNull String hash, @NotNull ItemStack item) {
+      ItemStack previous = byHash.putIfAbsent(hash, item);
+      if (previous != null && !previous.equals(item)) {
+        throw new IllegalStateException("Hash " + hash + " claimed by different items");
+      }
+    }
+
+    @TearDown(Level.Iteration)
+    public void verifyStored(CaptchaState state) {
+      for (Map.Entry<String, ItemStack> entry : byHash.entrySet()) {
+        if (!entry.getValue().equals(state.manager.getItemByHash(entry.getKey()))) {
+          throw new IllegalStateException("Hash " + entry.getKey() + " does not resolve to its item");
+        }
+      }
+    }
+
+  }
+
+  @Benchmark
+  public ItemStack captureIdentical(CaptchaState state, Claims claims) {
+    // All threads race to store the same item.
+    return capture(state, claims, state.plain);
+  }
+
+  @Benchmark
+  public ItemStack captureOverlapping(CaptchaState state, Claims claims) {
+    // A small pool of items shared between threads, so new records are claimed concurrently.
+    return capture(state, claims, createItem(ThreadLocalRandom.current().nextInt(64)));
+  }
+
+  @Benchmark
+  public ItemStack captureDistinct(CaptchaState state, Claims claims) {
+    return capture(state, claims, createItem(64 + claims.next.getAndIncrement()));
+  }
+
+  private static @NotNull ItemStack capture(
+      @NotNull CaptchaState state,
+      @NotNull Claims claims,
+      @NotNull ItemStack item
+  ) {
+    ItemStack card = Objects.requireNonNull(state.manager.getCaptchaForItem(item));
+    claims.verify(Objects.requireNonNull(CaptchaManager.getHashFromCaptcha(card)), item);
+    return card;
+  }
+
+  private static @NotNull ItemStack createItem(int index) {
+    ItemStack itemStack = ItemStack.of(Material.PAPER, 64);
+    itemStack.editMeta(meta -> meta.customName(Component.text("Concurrent " + index)));
+    return itemStack;
+  }
+
+}
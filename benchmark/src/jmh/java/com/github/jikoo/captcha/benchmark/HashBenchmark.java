@@ -0,0 +1,71 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.util.ItemFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ItemFingerprint} compared to the previous MD5 and base 36 {@link BigInteger} hashing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+
+  /** Size of serialized item data. Typical vanilla stacks serialize to a few hundred bytes. */
+  @Param({"128", "512", "4096"})
+  public int size;
+
+  private byte[] data;
+  private ItemFingerprint fingerprint;
+  private BigInteger md5;
+
+  @Setup
+  public void setUp() throws NoSuchAlgorithmException {
+    data = new byte[size];
+    new Random(size).nextBytes(data);
+    fingerprint = ItemFingerprint.of(data);
+    md5 = new BigInteger(1, MessageDigest.getInstance("MD5").digest(data));
+  }
+
+  @Benchmark
+  public String fingerprint() {
+    return ItemFingerprint.of(data).encode();
+  }
+
+  @Benchmark
+  public String md5() throws NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    return new BigInteger(1, digest.digest(data)).toString(Character.MAX_RADIX);
+  }
+
+  @Benchmark
+  public String fingerprintProbe() {
+    // One collision probe step.
+    return fingerprint.next().encode();
+  }
+
+  @Benchmark
+  public String md5Probe() {
+    return md5.add(BigInteger.ONE).toString(Character.MAX_RADIX);
+  }
+
+}
@@ -0,0 +1,72 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.CaptchaIdentity;
+import com.github.jikoo.captcha.CaptchaManager;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Card identification through read-only PDC views compared to the previous meta-copying approach.
+ * Run with the GC profiler to compare allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentifyBenchmark {
+
+  @Benchmark
+  public CaptchaIdentity identifyView(CaptchaState state) {
+    return CaptchaManager.identify(state.depthOne);
+  }
+
+  @Benchmark
+  public String getHashView(CaptchaState state) {
+    return CaptchaManager.getHashFromCaptcha(state.depthOne);
+  }
+
+  @Benchmark
+  public String getHashMetaCopy(CaptchaState state) {
+    return getHashLegacy(state.depthOne);
+  }
+
+  @Benchmark
+  public boolean isBlankView(CaptchaState state) {
+    return CaptchaManager.isBlankCaptcha(state.blank);
+  }
+
+  @Benchmark
+  public boolean isBlankMetaCopy(CaptchaState state) {
+    ItemStack itemStack = state.blank;
+    if (itemStack.getType() != Material.BOOK || !itemStack.hasItemMeta()) {
+      return false;
+    }
+    ItemMeta itemMeta = itemStack.getItemMeta();
+    return itemMeta != null && itemMeta.getPersistentDataContainer().has(CaptchaManager.KEY_BLANK);
+  }
+
+  private static String getHashLegacy(ItemStack itemStack) {
+    // Previous implementation: copy meta to read the PDC.
+    if (itemStack.getType() != Material.BOOK || !itemStack.hasItemMeta()) {
+      return null;
+    }
+    ItemMeta itemMeta = itemStack.getItemMeta();
+    if (itemMeta == null) {
+      return null;
+    }
+    return itemMeta.getPersistentDataContainer().get(CaptchaManager.KEY_HASH, PersistentDataType.STRING);
+  }
+
+}
@@ -0,0 +1,114 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.store.JdbcSettings;
+import com.github.jikoo.captcha.store.JdbcStore;
+import com.github.jikoo.captcha.util.ItemFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Two servers sharing a {@link JdbcStore}, backed by an in-memory H2 database in MariaDB mode.
+ *
+ * <p>This measures the cost of claiming hashes and of reading records written by another server.
+ * A real database adds network latency to every claim, so absolute numbers are a lower bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SharedStoreBenchmark {
+
+  private static final int RECORD_SIZE = 384;
+  private static final int RECORDS = 100_000;
+
+  private JdbcStore first;
+  private JdbcStore second;
+  private String[] hashes;
+  private byte[] data;
+  private final AtomicLong claimed = new AtomicLong(RECORDS);
+  private final LongAdder invalidated = new LongAdder();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    JdbcSettings settings = new JdbcSettings(
+        "jdbc:h2:mem:captcha;MODE=MariaDB;DB_CLOSE_DELAY=-1",
+        "sa",
+        "",
+        "captcha_",
+        Duration.ofMillis(100),
+        Duration.ofSeconds(2));
+    Logger logger = Logger.getLogger("SharedStoreBenchmark");
+    first = new JdbcStore(settings, hash -> invalidated.increment(), logger);
+    second = new JdbcStore(settings, hash -> invalidated.increment(), logger);
+    first.open();
+    second.open();
+
+    data = new byte[RECORD_SIZE];
+    new Random(RECORDS).nextBytes(data);
+    hashes = new String[RECORDS];
+    for (int i = 0; i < RECORDS; ++i) {
+      hashes[i] = hash(i);
+      first.write(hashes[i], data);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    first.close();
+    second.close();
+  }
+
+  private static String hash(long index) {
+    byte[] seed = new byte[Long.BYTES];
+    for (int i = 0; i < seed.length; ++i) {
+      seed[i] = (byte) (index >>> (i * 8));
+    }
+    return ItemFingerprint.of(seed).encode();
+  }
+
+  private String randomHash() {
+    return hashes[ThreadLocalRandom.current().nextInt(hashes.length)];
+  }
+
+  @Benchmark
+  @Threads(4)
+  public byte[] peerGet() throws IOException {
+    return second.get(randomHash());
+  }
+
+  @Benchmark
+  public byte[] claimNew() throws IOException {
+    // Alternate servers so that each claim also produces an event for the other to handle.
+    long index = claimed.getAndIncrement();
+    return ((index & 1) == 0 ? first : second).putIfAbsent(hash(index), data);
+  }
+
+  @Benchmark
+  public byte[] claimTaken() throws IOException {
+    // A collision: the other server already holds the hash.
+    return second.putIfAbsent(randomHash(), data);
+  }
+
+}
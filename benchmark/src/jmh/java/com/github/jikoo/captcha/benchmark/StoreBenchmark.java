@@ -0,0 +1,148 @@
+package com.github.jikoo.captcha.benchmark;
+
+import com.github.jikoo.captcha.store.CaptchaStore;
+import com.github.jikoo.captcha.store.StorageBackend;
+import com.github.jikoo.captcha.util.ItemFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Raw read and write throughput of each {@link CaptchaStore} implementation, without caching.
+ *
+ * <p>Large stores take a long time to fill and the memory store holds every record on the heap,
+ * so the record count is best chosen with {@code -Precords}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StoreBenchmark {
+
+  /** Typical vanilla stacks serialize to a few hundred bytes. */
+  private static final int RECORD_SIZE = 384;
+  private static final int FILL_BATCH = 10_000;
+  private static final int BULK_SIZE = 64;
+  private static final int WRITE_BATCH = 100;
+
+  @Param({"segment", "sqlite", "memory"})
+  public String backend;
+
+  /** Number of records in the store before measurement. */
+  @Param({"10000", "1000000", "10000000"})
+  public int records;
+
+  private Path directory;
+  private CaptchaStore store;
+  private String[] hashes;
+  private byte[] data;
+  private final AtomicLong written = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("captcha-store");
+    store = StorageBackend.valueOf(backend.toUpperCase(Locale.ROOT)).create(
+        directory,
+        64L * 1024L * 1024L,
+        Logger.getLogger("StoreBenchmark"));
+    store.open();
+
+    data = new byte[RECORD_SIZE];
+    new Random(records).nextBytes(data);
+    hashes = new String[records];
+    for (int i = 0; i < records; ++i) {
+      hashes[i] = hash(i);
+      store.write(hashes[i], data);
+      if (i % FILL_BATCH == FILL_BATCH - 1) {
+        store.sync();
+      }
+    }
+    store.sync();
+    written.set(records);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    store.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static String hash(long index) {
+    byte[] seed = new byte[Long.BYTES];
+    for (int i = 0; i < seed.length; ++i) {
+      seed[i] = (byte) (index >>> (i * 8));
+    }
+    return ItemFingerprint.of(seed).encode();
+  }
+
+  private String randomHash() {
+    return hashes[ThreadLocalRandom.current().nextInt(hashes.length)];
+  }
+
+  @Benchmark
+  @Threads(4)
+  public byte[] get() throws IOException {
+    return store.get(randomHash());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean containsMiss() throws IOException {
+    return store.contains(hash(-1 - ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE)));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Map<String, byte[]> getAll() throws IOException {
+    List<String> batch = new ArrayList<>(BULK_SIZE);
+    for (int i = 0; i < BULK_SIZE; ++i) {
+      batch.add(randomHash());
+    }
+    return store.getAll(batch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(WRITE_BATCH)
+  public void writeBatch() throws IOException {
+    // Mirrors the write-behind queue: a group of new records followed by a single sync.
+    long start = written.getAndAdd(WRITE_BATCH);
+    for (int i = 0; i < WRITE_BATCH; ++i) {
+      store.write(hash(start + i), data);
+    }
+    store.sync();
+  }
+
+}
@@ -14,6 +14,7 @@ dependencies {
   compileOnly(libs.annotations)
   compileOnly(libs.paper.api)
   compileOnly(libs.caffeine)
+  compileOnly(libs.zstd.jni)
   implementation(libs.planarwrappers)
   errorprone(libs.errorprone.core)
 }
@@ -23,10 +24,12 @@ tasks.processResources {
   val index = apiversion.indexOfFirst{ it == '-'}
   apiversion = if (index < 0) apiversion else apiversion.subSequence(0, index).toString()
   val caffeine = libs.caffeine.get()
+  val zstd = libs.zstd.jni.get()
   expand(
     "version" to version,
     "apiversion" to apiversion,
-    "caffeine" to "${caffeine.group}:${caffeine.name}:${caffeine.version}"
+    "caffeine" to "${caffeine.group}:${caffeine.name}:${caffeine.version}",
+    "zstd" to "${zstd.group}:${zstd.name}:${zstd.version}"
   )
 }
 
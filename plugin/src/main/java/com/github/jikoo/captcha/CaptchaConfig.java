@@ -0,0 +1,213 @@
+package com.github.jikoo.captcha;
+
+import com.github.jikoo.captcha.store.JdbcSettings;
+import com.github.jikoo.captcha.store.StorageBackend;
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Typed access to the plugin configuration.
+ */
+public class CaptchaConfig {
+
+  private static final String DEFAULT_TABLE_PREFIX = "captcha_";
+  private static final Pattern TABLE_PREFIX = Pattern.compile("\\w*");
+
+  private final @NotNull ConfigurationSection config;
+
+  public CaptchaConfig(@NotNull ConfigurationSection config) {
+    this.config = config;
+  }
+
+  /**
+   * Get the maximum number of records that may be waiting to be written before producers are made
+   * to write them.
+   *
+   * @return the maximum number of pending writes
+   */
+  public int getWriteBehindMaxPending() {
+    return Math.max(1, config.getInt("storage.write-behind.max-pending", 1_000));
+  }
+
+  /**
+   * Get the delay between a record being queued and its group being written.
+   *
+   * @return the flush delay
+   */
+  public @NotNull Duration getWriteBehindFlushDelay() {
+    return Duration.ofMillis(Math.max(0L, config.getLong("storage.write-behind.flush-delay-millis", 250L)));
+  }
+
+  /**
+   * Get the storage implementation for card contents. Unknown values use segment storage.
+   *
+   * @return the storage backend
+   */
+  public @NotNull StorageBackend getStorageBackend() {
+    String backend = config.getString("storage.backend", StorageBackend.SEGMENT.name());
+    try {
+      return StorageBackend.valueOf(backend.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return StorageBackend.SEGMENT;
+    }
+  }
+
+  /**
+   * Get the connection settings for shared storage.
+   *
+   * @return the connection settings
+   */
+  public @NotNull JdbcSettings getJdbcSettings() {
+    String prefix = config.getString("storage.jdbc.table-prefix", DEFAULT_TABLE_PREFIX);
+    return new JdbcSettings(
+        config.getString("storage.jdbc.url", "jdbc:mysql://localhost:3306/captcha"),
+        config.getString("storage.jdbc.username", ""),
+        config.getString("storage.jdbc.password", ""),
+        // Table names cannot be bound as parameters, so only plain identifiers are allowed.
+        TABLE_PREFIX.matcher(prefix).matches() ? prefix : DEFAULT_TABLE_PREFIX,
+        Duration.ofMillis(Math.max(50L, config.getLong("storage.jdbc.poll-interval-millis", 1_000L))),
+        Duration.ofSeconds(Math.max(1L, config.getLong("storage.jdbc.query-timeout-seconds", 2L)))
+    );
+  }
+
+  /**
+   * Get the size in bytes after which a new storage segment is started.
+   *
+   * @return the maximum segment size
+   */
+  public long getSegmentMaxSize() {
+    return Math.max(1L, config.getLong("storage.segment.max-size-mb", 64L)) * 1024L * 1024L;
+  }
+
+  /**
+   * Get the fraction of live data below which a storage segment is compacted.
+   *
+   * @return the compaction threshold
+   */
+  public double getSegmentCompactionThreshold() {
+    return Math.min(1.0, Math.max(0.0, config.getDouble("storage.segment.compaction-threshold", 0.5)));
+  }
+
+  /**
+   * Get the maximum number of decoded items to keep in memory.
+   *
+   * @return the decoded cache size
+   */
+  public long getDecodedCacheSize() {
+    return Math.max(1L, config.getLong("cache.decoded.max-entries", 500L));
+  }
+
+  /**
+   * Check if the hottest decoded items are recorded and loaded again on startup.
+   *
+   * @return true if the decoded cache is warmed on startup
+   */
+  public boolean isWarmStartEnabled() {
+    return config.getBoolean("cache.decoded.warm-start", true);
+  }
+
+  /**
+   * Get the maximum total size in bytes of serialized records to keep in memory.
+   *
+   * @return the serialized cache size
+   */
+  public long getSerializedCacheBytes() {
+    return Math.max(0L, config.getLong("cache.serialized.max-size-mb", 64L)) * 1024L * 1024L;
+  }
+
+  /**
+   * Get the maximum number of stored records examined per second when upgrading records serialized
+   * under an older data version.
+   *
+   * @return the upgrade rate, or 0 if upgrading is disabled
+   */
+  public int getUpgradeRate() {
+    return Math.max(0, config.getInt("storage.upgrade.max-per-second", 200));
+  }
+
+  /**
+   * Check if newly stored items are compressed with a trained dictionary.
+   *
+   * @return true if items are compressed
+   */
+  public boolean isCompressionEnabled() {
+    return config.getBoolean("storage.compression.enabled", false);
+  }
+
+  /**
+   * Get the zstd level items are compressed at.
+   *
+   * @return the compression level
+   */
+  public int getCompressionLevel() {
+    return Math.max(1, Math.min(22, config.getInt("storage.compression.level", 3)));
+  }
+
+  /**
+   * Check if records that no live card refers to are deleted.
+   *
+   * @return true if unreferenced records are collected
+   */
+  public boolean isGarbageCollectionEnabled() {
+    return config.getBoolean("storage.gc.enabled", false);
+  }
+
+  /**
+   * Get the time a record must have been unreferenced before it is deleted.
+   *
+   * @return the grace period
+   */
+  public @NotNull Duration getGarbageCollectionGracePeriod() {
+    return Duration.ofHours(Math.max(1L, config.getLong("storage.gc.grace-period-hours", 168L)));
+  }
+
+  /**
+   * Check if records that have not been read in a long time are moved to the archive.
+   *
+   * @return true if cold records are archived
+   */
+  public boolean isArchiveEnabled() {
+    return config.getBoolean("storage.archive.enabled", false);
+  }
+
+  /**
+   * Get the number of days a record must have gone unread before it is archived.
+   *
+   * @return the number of days
+   */
+  public int getArchiveAfterDays() {
+    return Math.max(1, config.getInt("storage.archive.after-days", 90));
+  }
+
+  /**
+   * Get the number of hours between checks for records to archive.
+   *
+   * @return the number of hours
+   */
+  public int getArchiveIntervalHours() {
+    return Math.max(1, config.getInt("storage.archive.interval-hours", 24));
+  }
+
+  /**
+   * Get the number of threads used to load card contents from storage.
+   *
+   * @return the number of read threads
+   */
+  public int getReadThreads() {
+    return Math.max(1, config.getInt("storage.read-threads", 2));
+  }
+
+  /**
+   * Get the maximum number of card contents to prefetch per second. Zero disables prefetching.
+   *
+   * @return the prefetch rate
+   */
+  public int getPrefetchRate() {
+    return Math.max(0, config.getInt("cache.prefetch.max-per-second", 200));
+  }
+
+}
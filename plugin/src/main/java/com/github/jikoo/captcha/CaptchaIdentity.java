@@ -0,0 +1,53 @@
+package com.github.jikoo.captcha;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The result of identifying an item as a captchacard.
+ *
+ * @param type the type of the item
+ * @param hash the hash of a used card, or {@code null} for other types
+ * @see CaptchaManager#identify(org.bukkit.inventory.ItemStack)
+ */
+public record CaptchaIdentity(@NotNull Type type, @Nullable String hash) {
+
+  /** Shared result for items that are not captchacards. */
+  public static final @NotNull CaptchaIdentity NOT_CAPTCHA = new CaptchaIdentity(Type.NOT_CAPTCHA, null);
+  /** Shared result for blank captchacards. */
+  public static final @NotNull CaptchaIdentity BLANK = new CaptchaIdentity(Type.BLANK, null);
+
+  /**
+   * Create a result for a used captchacard.
+   *
+   * @param hash the hash stored in the card
+   * @return the result
+   */
+  @Contract("_ -> new")
+  public static @NotNull CaptchaIdentity used(@NotNull String hash) {
+    return new CaptchaIdentity(Type.USED, hash);
+  }
+
+  /**
+   * Check if the item is a captchacard of any type.
+   *
+   * @return true if the item is a captchacard
+   */
+  public boolean isCaptcha() {
+    return type != Type.NOT_CAPTCHA;
+  }
+
+  /**
+   * The type of item identified.
+   */
+  public enum Type {
+    /** The item is not a captchacard. */
+    NOT_CAPTCHA,
+    /** The item is a blank captchacard. */
+    BLANK,
+    /** The item is a captchacard that has been used. */
+    USED
+  }
+
+}
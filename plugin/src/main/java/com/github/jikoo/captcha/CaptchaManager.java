@@ -1,9 +1,30 @@
 package com.github.jikoo.captcha;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.jikoo.captcha.metrics.CaptchaMetrics;
+import com.github.jikoo.captcha.store.AccessLog;
+import com.github.jikoo.captcha.store.Archive;
+import com.github.jikoo.captcha.store.CaptchaRecord;
+import com.github.jikoo.captcha.store.CaptchaStore;
+import com.github.jikoo.captcha.store.ChainSummary;
+import com.github.jikoo.captcha.store.ColdArchiver;
+import com.github.jikoo.captcha.store.CompressedStore;
+import com.github.jikoo.captcha.store.DataVersionUpgrader;
+import com.github.jikoo.captcha.store.HotKeySnapshot;
+import com.github.jikoo.captcha.store.JdbcStore;
+import com.github.jikoo.captcha.store.LegacyFileMigrator;
+import com.github.jikoo.captcha.store.NestedReference;
+import com.github.jikoo.captcha.store.ReferenceCounts;
+import com.github.jikoo.captcha.store.RecordSink;
+import com.github.jikoo.captcha.store.StorageBackend;
+import com.github.jikoo.captcha.store.WriteBehindQueue;
+import com.github.jikoo.captcha.util.CanonicalItem;
+import com.github.jikoo.captcha.util.ItemFingerprint;
 import com.github.jikoo.captcha.util.lang.ComponentLangManager;
 import com.github.jikoo.captcha.util.lang.HashReplacement;
 import com.github.jikoo.captcha.util.lang.ItemNameReplacement;
@@ -11,7 +32,9 @@ import com.github.jikoo.captcha.util.lang.Messages;
 import com.github.jikoo.captcha.util.lang.QuantityReplacement;
 import com.github.jikoo.captcha.util.lang.SimpleReplacement;
 import com.github.jikoo.planarwrappers.lang.Replacement;
+import io.papermc.paper.persistence.PersistentDataContainerView;
 import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.inventory.InventoryHolder;
@@ -25,27 +48,43 @@ import org.bukkit.persistence.PersistentDataType;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.math.BigInteger;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Storage and creation of captchacards.
+ *
+ * <p>The plugin registers its manager with Bukkit's {@link org.bukkit.plugin.ServicesManager}, so
+ * other plugins may obtain it with {@code getServicesManager().load(CaptchaManager.class)}.
+ */
 public class CaptchaManager {
 
   public static final @NotNull NamespacedKey KEY_UNCAPTCHA_RECIPE =
@@ -56,41 +95,492 @@ public class CaptchaManager {
       Objects.requireNonNull(NamespacedKey.fromString("captcha:blank"));
   public static final @NotNull NamespacedKey KEY_HASH =
       Objects.requireNonNull(NamespacedKey.fromString("captcha:hash"));
+  public static final @NotNull NamespacedKey KEY_DEPTH =
+      Objects.requireNonNull(NamespacedKey.fromString("captcha:depth"));
+  public static final @NotNull NamespacedKey KEY_ROOT_TYPE =
+      Objects.requireNonNull(NamespacedKey.fromString("captcha:root_type"));
+  public static final @NotNull NamespacedKey KEY_ROOT_QUANTITY =
+      Objects.requireNonNull(NamespacedKey.fromString("captcha:root_quantity"));
   private static final int MAX_CAPTCHA_DEPTH = 2;
+  // Guard against malformed records referencing themselves.
+  private static final int MAX_CHAIN_SCAN = 8;
+  // Must be a power of two.
+  private static final int HASH_LOCK_STRIPES = 64;
+  private static final String HOT_KEYS_FILE = "hot-keys.dat";
+  private static final int MAX_HASH_COMPLETIONS = 50;
 
-  private final LoadingCache<String, ItemStack> cache =
+  private final @NotNull AsyncLoadingCache<String, ItemStack> cache;
+  private final @NotNull Cache<String, byte[]> serializedCache;
+  // Stored hashes by prefix for command completion, which must never wait on storage.
+  private final @NotNull AsyncLoadingCache<String, List<String>> completions;
+  private final Cache<String, ChainSummary> chains =
       Caffeine.newBuilder()
-          .maximumSize(500L)
-          .expireAfterAccess(Duration.ofMinutes(30))
-          .evictionListener(
-              (RemovalListener<String, ItemStack>) (key, value, cause) -> {
-                if (key != null && value != null) {
-                  save(key, value);
-                }
-              }
-          )
-          .build(
-              new CacheLoader<>() {
-                @Override
-                public @NotNull ItemStack load(@NotNull String hash) throws Exception {
-                  Path hashPath = dataDir.resolve(hash + ".nbt");
-                  if (!Files.exists(hashPath)) {
-                    throw new FileNotFoundException();
-                  }
-                  try (InputStream in = Files.newInputStream(hashPath)) {
-                    return ItemStack.deserializeBytes(in.readAllBytes());
-                  }
-                }
-              }
-          );
+          .maximumSize(50_000L)
+          .build();
+  private final Cache<String, Boolean> missing =
+      Caffeine.newBuilder()
+          .maximumSize(10_000L)
+          .expireAfterWrite(Duration.ofMinutes(5))
+          .build();
+  // Hashes prefetched but not yet looked up, used to measure how often prefetching pays off.
+  private final Cache<String, Boolean> prefetched =
+      Caffeine.newBuilder()
+          .maximumSize(50_000L)
+          .expireAfterWrite(Duration.ofMinutes(10))
+          .build();
+  // Non-canonical hashes already queued for canonicalization.
+  private final Cache<String, Boolean> canonicalized =
+      Caffeine.newBuilder()
+          .maximumSize(50_000L)
+          .expireAfterWrite(Duration.ofMinutes(30))
+          .build();
+  private final AtomicLong prefetchWindow = new AtomicLong();
+  private final AtomicInteger prefetchPermits = new AtomicInteger();
+  private final int prefetchRate;
+  private final boolean warmStart;
+  // Hashes loaded by the startup warm-up that have not been read since.
+  private final @NotNull Set<String> warmed = ConcurrentHashMap.newKeySet();
   private final @NotNull Path dataDir;
   private final @NotNull ComponentLangManager lang;
   private final @NotNull Logger logger;
+  private final @NotNull ScheduledExecutorService ioExecutor;
+  private final @NotNull ExecutorService readExecutor;
+  private final @NotNull CompressedStore store;
+  private final @NotNull LegacyFileMigrator migrator;
+  private final @NotNull WriteBehindQueue writeQueue;
+  private final @NotNull DataVersionUpgrader upgrader;
+  private final @NotNull Archive archive;
+  private final @NotNull AccessLog accessLog;
+  private final @Nullable ColdArchiver archiver;
+  private final @NotNull ReferenceCounts references;
+  private final @NotNull Duration gcGracePeriod;
+  private final int dataVersion;
+  private final @NotNull CaptchaMetrics metrics = new CaptchaMetrics();
+  private final Object @NotNull [] hashLocks = new Object[HASH_LOCK_STRIPES];
+  private volatile boolean migrating;
 
-  public CaptchaManager(@NotNull Path dataDir, @NotNull ComponentLangManager lang, @NotNull Logger logger) {
+  @SuppressWarnings("deprecation") // UnsafeValues#getDataVersion is the only source of the data version.
+  public CaptchaManager(
+      @NotNull Path dataDir,
+      @NotNull CaptchaConfig config,
+      @NotNull ComponentLangManager lang,
+      @NotNull Logger logger
+  ) throws IOException {
     this.dataDir = dataDir;
     this.lang = lang;
     this.logger = logger;
+    this.prefetchRate = config.getPrefetchRate();
+    this.warmStart = config.isWarmStartEnabled();
+    this.dataVersion = Bukkit.getUnsafe().getDataVersion();
+    this.gcGracePeriod = config.getGarbageCollectionGracePeriod();
+    for (int i = 0; i < HASH_LOCK_STRIPES; ++i) {
+      hashLocks[i] = new Object();
+    }
+    AtomicInteger readThreads = new AtomicInteger();
+    this.readExecutor = Executors.newFixedThreadPool(config.getReadThreads(), runnable -> {
+      Thread thread = new Thread(runnable, "Captcha Read #" + readThreads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Decoded items are heavy, so only the hottest are kept materialized.
+    // Loads run on the read executor. Loading must never wait on the cache, or the pool may starve.
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(config.getDecodedCacheSize())
+        .expireAfterAccess(Duration.ofMinutes(30))
+        .recordStats()
+        .executor(readExecutor)
+        .evictionListener(
+            (RemovalListener<String, ItemStack>) (key, value, cause) -> {
+              if (key != null && value != null) {
+                save(key, value);
+              }
+            }
+        )
+        .buildAsync(
+            new CacheLoader<>() {
+              @Override
+              public @Nullable ItemStack load(@NotNull String hash) throws Exception {
+                byte[] data = readRecord(hash);
+                if (data == null) {
+                  // Caffeine does not cache null values, so misses are simply reported absent.
+                  return null;
+                }
+                canonicalizeLater(hash);
+                return decodeItem(data);
+              }
+            }
+        );
+    // Serialized records are compact, so a much larger set can be held without touching disk.
+    this.serializedCache = Caffeine.newBuilder()
+        .maximumWeight(config.getSerializedCacheBytes())
+        .weigher((String key, byte[] value) -> value.length)
+        .recordStats()
+        .build();
+    this.ioExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Captcha I/O");
+      thread.setDaemon(true);
+      return thread;
+    });
+    StorageBackend backend = config.getStorageBackend();
+    CaptchaStore backingStore = backend == StorageBackend.JDBC
+        ? new JdbcStore(config.getJdbcSettings(), this::invalidateRemote, logger)
+        : backend.create(dataDir, config.getSegmentMaxSize(), logger);
+    // Always wrapped so that compressed records stay readable if compression is turned off.
+    this.store = new CompressedStore(
+        backingStore,
+        config.isCompressionEnabled(),
+        config.getCompressionLevel(),
+        logger);
+    this.store.open();
+    this.completions = Caffeine.newBuilder()
+        .maximumSize(256L)
+        .expireAfterWrite(Duration.ofSeconds(10))
+        .executor(readExecutor)
+        .buildAsync(prefix -> {
+          try {
+            return store.keys(prefix, MAX_HASH_COMPLETIONS);
+          } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to complete stored hashes", e);
+            return List.of();
+          }
+        });
+    this.archive = new Archive(dataDir.resolve("archive"), logger);
+    this.archive.deleteIncomplete();
+    this.archive.open();
+    this.accessLog = new AccessLog(dataDir.resolve("access"), config.getArchiveAfterDays(), logger);
+    this.accessLog.load();
+    this.migrator = new LegacyFileMigrator(dataDir, store, logger);
+    this.references = new ReferenceCounts(dataDir, logger);
+    this.references.load();
+    this.writeQueue = new WriteBehindQueue(
+        ioExecutor,
+        new MeteredSink(store, metrics),
+        config.getWriteBehindMaxPending(),
+        config.getWriteBehindFlushDelay(),
+        logger
+    );
+
+    if (migrator.hasLegacyFiles()) {
+      // Legacy files are read directly until they have all been moved into the store.
+      migrating = true;
+      ioExecutor.execute(() -> {
+        logger.info("Migrating legacy card contents to card storage.");
+        int migrated = migrator.migrate();
+        migrating = false;
+        logger.info(() -> "Migrated " + migrated + " legacy card contents.");
+      });
+    }
+
+    this.upgrader = new DataVersionUpgrader(
+        store,
+        dataDir,
+        ioExecutor,
+        (hash, data) -> serializedCache.asMap().replace(hash, data),
+        dataVersion,
+        config.getUpgradeRate(),
+        logger
+    );
+    // Queued behind any migration so that migrated records are upgraded too.
+    ioExecutor.execute(upgrader::start);
+
+    if (config.isCompressionEnabled() && !store.isCompressing()) {
+      // Also queued behind migration, so that legacy contents are part of the sample.
+      ioExecutor.execute(() -> CompletableFuture.runAsync(this::trainDictionary));
+    }
+
+    double compactionThreshold = config.getSegmentCompactionThreshold();
+    ioExecutor.scheduleWithFixedDelay(
+        () -> {
+          try {
+            int compacted = store.compact(compactionThreshold);
+            if (compacted > 0) {
+              logger.info(() -> "Compacted " + compacted + " card storage segments.");
+            }
+          } catch (IOException e) {
+            logger.log(Level.WARNING, "Error compacting card storage", e);
+          }
+        },
+        10,
+        10,
+        TimeUnit.MINUTES
+    );
+
+    // Reference count changes are cheap to lose a few of, but not worth a sync per card.
+    ioExecutor.scheduleWithFixedDelay(this::flushReferences, 5, 5, TimeUnit.SECONDS);
+    if (config.isGarbageCollectionEnabled()) {
+      if (store.isShared()) {
+        // Cards are counted per server, so no single server knows whether a record is unreferenced.
+        logger.warning("Garbage collection is not supported with shared storage and has been disabled.");
+      } else {
+        ioExecutor.scheduleWithFixedDelay(this::collectUnreferenced, 30, 30, TimeUnit.MINUTES);
+      }
+    }
+
+    // Access is tracked by day, so losing the last minute to a crash barely matters.
+    ioExecutor.scheduleWithFixedDelay(this::flushAccessLog, 1, 1, TimeUnit.MINUTES);
+    if (config.isArchiveEnabled() && store.isShared()) {
+      // Archive packs are local files, so other servers could no longer read archived records.
+      logger.warning("Archival is not supported with shared storage and has been disabled.");
+      this.archiver = null;
+    } else if (config.isArchiveEnabled()) {
+      this.archiver = new ColdArchiver(store, archive, accessLog, ioExecutor, config.getArchiveAfterDays(), logger);
+      this.archiver.start(config.getArchiveIntervalHours());
+    } else {
+      this.archiver = null;
+    }
+
+    if (warmStart) {
+      // Started before the server accepts players so that the cache is warm by the time they join.
+      readExecutor.execute(this::warmUp);
+      // Also kept up to date in case the server does not shut down cleanly.
+      ioExecutor.scheduleWithFixedDelay(this::writeHotKeys, 5, 5, TimeUnit.MINUTES);
+    }
+  }
+
+  /**
+   * Get statistics for the cache of decoded items.
+   *
+   * @return the decoded tier statistics
+   */
+  public @NotNull CacheStats getDecodedCacheStats() {
+    return cache.synchronous().stats();
+  }
+
+  /**
+   * Get statistics for the cache of serialized records.
+   *
+   * @return the serialized tier statistics
+   */
+  public @NotNull CacheStats getSerializedCacheStats() {
+    return serializedCache.stats();
+  }
+
+  /**
+   * Get operation counters and latencies.
+   *
+   * @return the metrics
+   */
+  public @NotNull CaptchaMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Get the number of card contents moved to the archive, including any archived more than once.
+   *
+   * @return the number of archived records
+   */
+  public long getArchivedCount() {
+    return archive.size();
+  }
+
+  /**
+   * Get the number of archive packs.
+   *
+   * @return the number of packs
+   */
+  public int getArchivePackCount() {
+    return archive.getPackCount();
+  }
+
+  /**
+   * Get the number of card contents waiting to be written to storage.
+   *
+   * @return the number of pending writes
+   */
+  public int getPendingWrites() {
+    return writeQueue.size();
+  }
+
+  /**
+   * Write all pending card contents and stop background I/O.
+   */
+  public void close() {
+    logger.info(() -> "Decoded card cache: " + getDecodedCacheStats());
+    logger.info(() -> "Serialized card cache: " + getSerializedCacheStats());
+
+    upgrader.close();
+    if (archiver != null) {
+      archiver.close();
+    }
+    readExecutor.shutdown();
+    ioExecutor.shutdown();
+    try {
+      if (!readExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+        logger.warning("Timed out waiting for captcha read threads to finish.");
+      }
+      if (!ioExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+        logger.warning("Timed out waiting for captcha I/O thread to finish.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (warmStart) {
+      writeHotKeys();
+    }
+    writeQueue.flush();
+    flushReferences();
+    flushAccessLog();
+    archive.close();
+    try {
+      store.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error closing card storage", e);
+    }
+  }
+
+  private void invalidateRemote(@NotNull String hash) {
+    // Another server stored, replaced, or deleted the record, so anything known about it may be stale.
+    serializedCache.invalidate(hash);
+    cache.synchronous().invalidate(hash);
+    chains.invalidate(hash);
+    missing.invalidate(hash);
+  }
+
+  private void trainDictionary() {
+    try {
+      long start = System.nanoTime();
+      byte[] dictionary = store.trainDictionary();
+      if (dictionary == null) {
+        logger.info("Too few card contents stored to train a compression dictionary. Retrying next start.");
+        return;
+      }
+      long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      ioExecutor.execute(() -> {
+        try {
+          int id = store.installDictionary(dictionary);
+          logger.info(() -> String.format(
+              "Trained card compression dictionary %d (%d bytes) in %dms.",
+              id,
+              dictionary.length,
+              elapsed));
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Error storing card compression dictionary", e);
+        }
+      });
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error training card compression dictionary", e);
+    } catch (RejectedExecutionException e) {
+      // Shutting down, dictionary will be trained next start.
+    }
+  }
+
+  private void flushReferences() {
+    try {
+      references.flush();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error storing card reference counts", e);
+    }
+  }
+
+  private void warmUp() {
+    long start = System.nanoTime();
+    List<String> hashes;
+    try {
+      hashes = HotKeySnapshot.read(dataDir.resolve(HOT_KEYS_FILE));
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to read card cache snapshot", e);
+      return;
+    }
+    if (hashes.isEmpty()) {
+      return;
+    }
+
+    // Until read for real, warmed items are left out of the next snapshot so that an unused hot set
+    // cannot keep itself alive across restarts.
+    warmed.addAll(hashes);
+    // Records are read in a single pass and decoded in parallel.
+    Map<String, ItemStack> items = loadItems(hashes, false);
+    warmed.retainAll(items.keySet());
+    int loaded = items.size();
+    logger.info(() -> String.format(
+        "Warmed card cache with %d of %d items in %dms.",
+        loaded,
+        hashes.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+  }
+
+  private void writeHotKeys() {
+    // Ordered hottest first by the eviction policy.
+    List<String> hottest = cache.synchronous().policy().eviction()
+        .map(eviction -> eviction.hottest((int) Math.min(Integer.MAX_VALUE, eviction.getMaximum())).keySet())
+        .orElse(Set.of())
+        .stream()
+        .filter(hash -> !warmed.contains(hash))
+        .toList();
+    try {
+      HotKeySnapshot.write(dataDir.resolve(HOT_KEYS_FILE), hottest);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to store card cache snapshot", e);
+    }
+  }
+
+  private void recordAccess(@NotNull String hash) {
+    accessLog.record(hash);
+    if (!warmed.isEmpty()) {
+      warmed.remove(hash);
+    }
+  }
+
+  private void flushAccessLog() {
+    try {
+      accessLog.flush();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error storing card access log", e);
+    }
+  }
+
+  private void collectUnreferenced() {
+    long before = System.currentTimeMillis() - gcGracePeriod.toMillis();
+    int collected = 0;
+    try {
+      for (String hash : references.getUnreferenced(before)) {
+        // Re-check under the hash lock so that a capture cannot claim the record as it is deleted.
+        synchronized (getHashLock(hash)) {
+          if (!references.isUnreferenced(hash, before) || writeQueue.getPending(hash) != null) {
+            continue;
+          }
+          references.untrack(hash);
+          if (store.delete(hash)) {
+            ++collected;
+          }
+          cache.synchronous().invalidate(hash);
+          serializedCache.invalidate(hash);
+          chains.invalidate(hash);
+        }
+      }
+      store.sync();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error deleting unreferenced card contents", e);
+    }
+
+    if (collected > 0) {
+      int count = collected;
+      logger.info(() -> "Deleted " + count + " unreferenced card contents.");
+    }
+  }
+
+  /**
+   * Record that additional cards for a hash have been issued, i.e. because the amount of a card
+   * returned by {@link #getCaptchaForHash(String)} was increased. Each card returned is already
+   * counted once.
+   *
+   * @param hash the hash
+   * @param amount the number of additional cards
+   */
+  public void retain(@NotNull String hash, int amount) {
+    references.adjust(hash, amount);
+  }
+
+  /**
+   * Record that cards for a hash have been consumed. Contents no longer referred to by any card are
+   * deleted after a grace period if garbage collection is enabled.
+   *
+   * @param hash the hash
+   * @param amount the number of cards consumed
+   */
+  public void release(@NotNull String hash, int amount) {
+    references.adjust(hash, -amount);
   }
 
   /**
@@ -102,6 +592,38 @@ public class CaptchaManager {
     return this.dataDir;
   }
 
+  /**
+   * Get all stored hashes. Depending on the storage backend, this is either a live view or a
+   * snapshot. Does not include hashes that are still being migrated from legacy storage or that
+   * have been archived. Depending on the storage backend, this may list the entire store, so it
+   * must not be called on the main thread; see {@link #completeStoredHash(String)} for lookups.
+   *
+   * @return the stored hashes
+   */
+  public @NotNull @UnmodifiableView Set<String> getStoredHashes() {
+    return Collections.unmodifiableSet(store.keys());
+  }
+
+  /**
+   * Get stored hashes starting with a prefix for command completion. Never waits on storage: the
+   * lookup runs in the background, and until it completes, known completions of a shorter prefix
+   * are narrowed down instead.
+   *
+   * @param prefix the prefix
+   * @return up to 50 matching hashes
+   */
+  public @NotNull List<String> completeStoredHash(@NotNull String prefix) {
+    CompletableFuture<List<String>> future = completions.get(prefix);
+    for (int length = prefix.length(); length >= 0; --length) {
+      CompletableFuture<List<String>> known =
+          length == prefix.length() ? future : completions.getIfPresent(prefix.substring(0, length));
+      if (known != null && known.isDone() && !known.isCompletedExceptionally()) {
+        return known.join().stream().filter(hash -> hash.startsWith(prefix)).toList();
+      }
+    }
+    return List.of();
+  }
+
   /**
    * Check if an ItemStack is a blank captchacard.
    *
@@ -110,7 +632,8 @@ public class CaptchaManager {
    */
   @Contract("null -> false")
   public static boolean isBlankCaptcha(@Nullable ItemStack item) {
-    return isCaptcha(item, pdc -> pdc.has(KEY_BLANK));
+    PersistentDataContainerView pdc = getCaptchaData(item);
+    return pdc != null && pdc.has(KEY_BLANK);
   }
 
   /**
@@ -121,7 +644,8 @@ public class CaptchaManager {
    */
   @Contract("null -> false")
   public static boolean isUsedCaptcha(@Nullable ItemStack item) {
-    return isCaptcha(item, pdc -> pdc.has(KEY_HASH, PersistentDataType.STRING));
+    PersistentDataContainerView pdc = getCaptchaData(item);
+    return pdc != null && pdc.has(KEY_HASH, PersistentDataType.STRING);
   }
 
   /**
@@ -132,7 +656,29 @@ public class CaptchaManager {
    */
   @Contract("null -> false")
   public static boolean isCaptcha(@Nullable ItemStack item) {
-    return isCaptcha(item, pdc -> pdc.has(KEY_BLANK) || pdc.has(KEY_HASH, PersistentDataType.STRING));
+    PersistentDataContainerView pdc = getCaptchaData(item);
+    return pdc != null && (pdc.has(KEY_BLANK) || pdc.has(KEY_HASH, PersistentDataType.STRING));
+  }
+
+  /**
+   * Identify an ItemStack as a blank captchacard, a used captchacard, or neither.
+   *
+   * <p>Unlike checks based on {@link ItemStack#getItemMeta()}, identification reads the item's data
+   * through a read-only view and does not copy the item's meta.
+   *
+   * @param item the ItemStack to identify
+   * @return the identity of the item
+   */
+  public static @NotNull CaptchaIdentity identify(@Nullable ItemStack item) {
+    PersistentDataContainerView pdc = getCaptchaData(item);
+    if (pdc == null) {
+      return CaptchaIdentity.NOT_CAPTCHA;
+    }
+    if (pdc.has(KEY_BLANK)) {
+      return CaptchaIdentity.BLANK;
+    }
+    String hash = pdc.get(KEY_HASH, PersistentDataType.STRING);
+    return hash == null ? CaptchaIdentity.NOT_CAPTCHA : CaptchaIdentity.used(hash);
   }
 
   /**
@@ -141,25 +687,45 @@ public class CaptchaManager {
    * @param itemStack the ItemStack to check
    * @param predicate a predicate determining if the item's PersistentDataContainer is acceptable
    * @return true if the ItemStack is a captchacard
+   * @deprecated copies the item's meta to obtain a mutable container, use
+   *     {@link #isCaptchaData(ItemStack, Predicate)} instead
    */
+  @Deprecated
   @Contract("null, _ -> false")
   public static boolean isCaptcha(
       @Nullable ItemStack itemStack,
       @NotNull Predicate<PersistentDataContainer> predicate
   ) {
-    // If the item is not a book or does not have meta, it cannot be a captcha.
-    if (itemStack == null || itemStack.getType() != Material.BOOK || !itemStack.hasItemMeta()) {
-      return false;
-    }
+    return isCaptchaData(itemStack, view -> itemStack.hasItemMeta()
+        && predicate.test(itemStack.getItemMeta().getPersistentDataContainer()));
+  }
 
-    ItemMeta itemMeta = itemStack.getItemMeta();
-    // Meta should not be null here, but just in case.
-    if (itemMeta == null) {
-      return false;
+  /**
+   * Check if an ItemStack is a captchacard.
+   *
+   * @param itemStack the ItemStack to check
+   * @param predicate a predicate determining if a read-only view of the item's data is acceptable
+   * @return true if the ItemStack is a captchacard
+   */
+  @Contract("null, _ -> false")
+  public static boolean isCaptchaData(
+      @Nullable ItemStack itemStack,
+      @NotNull Predicate<PersistentDataContainerView> predicate
+  ) {
+    PersistentDataContainerView pdc = getCaptchaData(itemStack);
+    // Test for correct PDC content.
+    return pdc != null && predicate.test(pdc);
+  }
+
+  @Contract("null -> null")
+  private static @Nullable PersistentDataContainerView getCaptchaData(@Nullable ItemStack itemStack) {
+    // If the item is not a book, it cannot be a captcha.
+    if (itemStack == null || itemStack.getType() != Material.BOOK) {
+      return null;
     }
 
-    // Test for correct PDC content.
-    return predicate.test(itemMeta.getPersistentDataContainer());
+    // Read-only view does not copy meta.
+    return itemStack.getPersistentDataContainer();
   }
 
   /**
@@ -193,15 +759,8 @@ public class CaptchaManager {
    */
   @Contract("null -> null")
   public static @Nullable String getHashFromCaptcha(@Nullable ItemStack captcha) {
-    AtomicReference<String> reference = new AtomicReference<>();
-    isCaptcha(
-        captcha,
-        pdc -> {
-          reference.set(pdc.get(KEY_HASH, PersistentDataType.STRING));
-          return true;
-        }
-    );
-    return reference.get();
+    PersistentDataContainerView pdc = getCaptchaData(captcha);
+    return pdc == null ? null : pdc.get(KEY_HASH, PersistentDataType.STRING);
   }
 
   /**
@@ -237,6 +796,10 @@ public class CaptchaManager {
         || (requireMaxStacks && item.getAmount() != item.getMaxStackSize())) {
       return true;
     }
+    // Cards are plain books, so only their depth matters. It is read without copying meta.
+    if (isCaptcha(item)) {
+      return getCaptchaDepth(item) >= MAX_CAPTCHA_DEPTH;
+    }
     if (item.hasItemMeta()) {
       ItemMeta meta = item.getItemMeta();
       if (meta instanceof BundleMeta
@@ -244,62 +807,320 @@ public class CaptchaManager {
         return true;
       }
     }
-    return getCaptchaDepth(item) >= MAX_CAPTCHA_DEPTH;
+    return false;
   }
 
   /**
    * Calculate captcha depth. This is the number of times a captcha must be undone to arrive at the
    * original stored item.
    *
+   * <p>Cards record their depth when created, so this only touches storage for older cards.
+   *
    * @param item the captchacard
    * @return the captcha depth
    */
   public int getCaptchaDepth(@Nullable ItemStack item) {
+    PersistentDataContainerView pdc = getCaptchaData(item);
+    String hash = pdc == null ? null : pdc.get(KEY_HASH, PersistentDataType.STRING);
     // If the item is not a used captcha, it has a depth of 0.
-    if (!isUsedCaptcha(item)) {
+    if (hash == null) {
       return 0;
     }
 
-    int depth = 1;
-    ItemStack newItem = getItemByCaptcha(item);
-    while (isUsedCaptcha(newItem)) {
-      // If the unpacked item is the same, it is invalid in some way.
-      if (newItem.isSimilar(item)) {
-        return depth;
+    Integer depth = pdc.get(KEY_DEPTH, PersistentDataType.INTEGER);
+    if (depth != null) {
+      return depth;
+    }
+
+    // If the card's contents are missing, it is invalid and cannot be unpacked further.
+    ChainSummary chain = getChainSummary(hash);
+    return chain == null ? 1 : chain.depth();
+  }
+
+  /**
+   * Add the chain summary to a card created before cards recorded their own depth. The card's hash
+   * and contents are not changed.
+   *
+   * @param card the captchacard
+   * @return true if the card was modified
+   */
+  public boolean backfillChainSummary(@Nullable ItemStack card) {
+    PersistentDataContainerView pdc = getCaptchaData(card);
+    String hash = pdc == null ? null : pdc.get(KEY_HASH, PersistentDataType.STRING);
+    if (hash == null || pdc.has(KEY_DEPTH, PersistentDataType.INTEGER)) {
+      return false;
+    }
+
+    ChainSummary chain = getChainSummary(hash);
+    if (chain == null) {
+      return false;
+    }
+
+    card.editMeta(meta -> {
+      PersistentDataContainer dataContainer = meta.getPersistentDataContainer();
+      dataContainer.set(KEY_DEPTH, PersistentDataType.INTEGER, chain.depth());
+      dataContainer.set(KEY_ROOT_TYPE, PersistentDataType.STRING, chain.rootType());
+      dataContainer.set(KEY_ROOT_QUANTITY, PersistentDataType.LONG, chain.rootQuantity());
+    });
+    return true;
+  }
+
+  /**
+   * Get the summary of the nested card chain represented by a hash. Summaries are stored with new
+   * records and computed once for older records.
+   *
+   * @param hash the hash
+   * @return the chain summary or {@code null} if the hash is not stored
+   */
+  public @Nullable ChainSummary getChainSummary(@NotNull String hash) {
+    return getChainSummary(hash, MAX_CHAIN_SCAN);
+  }
+
+  private @Nullable ChainSummary getChainSummary(@NotNull String hash, int limit) {
+    ChainSummary chain = chains.getIfPresent(hash);
+    if (chain != null) {
+      return chain;
+    }
+
+    CaptchaRecord captchaRecord = readCaptchaRecord(hash);
+    if (captchaRecord == null) {
+      return null;
+    }
+
+    chain = captchaRecord.chain();
+    if (chain == null) {
+      // Older records must be unpacked once to find their root.
+      ItemStack item = getItemByHash(hash);
+      if (item == null) {
+        return null;
       }
-      // Increment depth and repeat unpack attempt on new item.
-      ++depth;
-      item = newItem;
-      newItem = getItemByCaptcha(item);
+      chain = summarize(hash, item, limit);
+      persistChainSummary(hash, captchaRecord.withChain(chain));
+    }
+
+    chains.put(hash, chain);
+    return chain;
+  }
+
+  private @NotNull ChainSummary summarize(@NotNull String hash, @NotNull ItemStack item, int limit) {
+    String innerHash = getHashFromCaptcha(item);
+
+    // If the item is not a used captcha, the root is the current item.
+    if (innerHash == null) {
+      return new ChainSummary(
+          1,
+          hash,
+          ItemNameReplacement.getNameString(item),
+          item.getType().key().asString(),
+          item.getAmount()
+      );
+    }
+
+    ChainSummary inner = limit > 0 ? getChainSummary(innerHash, limit - 1) : null;
+    if (inner != null) {
+      // For every stage, multiply by amount.
+      return new ChainSummary(
+          inner.depth() + 1,
+          inner.rootHash(),
+          inner.rootName(),
+          inner.rootType(),
+          item.getAmount() * inner.rootQuantity()
+      );
+    }
+
+    // If the inner card is invalid, it is the last valid unpacking phase.
+    return new ChainSummary(
+        2,
+        hash,
+        ItemNameReplacement.getNameString(item),
+        item.getType().key().asString(),
+        item.getAmount()
+    );
+  }
+
+  private void persistChainSummary(@NotNull String hash, @NotNull CaptchaRecord captchaRecord) {
+    byte[] data = captchaRecord.encode();
+    serializedCache.put(hash, data);
+    try {
+      ioExecutor.execute(() -> {
+        try {
+          // Only upgrade records that are already stored; pending and legacy records are written later.
+          // Aliases are left in place, as their summary belongs to the record they point to.
+          byte[] stored = store.get(hash);
+          if (stored != null && CaptchaRecord.getAliasTarget(stored) == null) {
+            store.replace(hash, data);
+          }
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Error storing card chain summary", e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Shutting down, summary will be recalculated next time.
     }
-    return depth;
   }
 
   /**
-   * Convert an ItemStack into a captchacard.
+   * Convert an ItemStack into a captchacard. Safe to call concurrently; identical items always
+   * resolve to the same hash and colliding items never share one.
    *
    * @param item the ItemStack to convert
-   * @return the captchacard representing by this ItemStack
+   * @return the captchacard representing by this ItemStack or null if its contents cannot be stored
    */
   public @Nullable ItemStack getCaptchaForItem(@NotNull ItemStack item) {
-    item = item.clone();
-    String itemHash = calculateHashForItem(item);
-    this.save(itemHash, item);
-    this.cache.put(itemHash, item);
+    String itemHash;
+    try {
+      itemHash = storeItem(item.clone(), true);
+    } catch (UncheckedIOException e) {
+      logger.log(Level.WARNING, "Refusing capture, card contents could not be stored", e);
+      return null;
+    }
+    metrics.recordCapture();
     return getCaptchaForHash(itemHash);
   }
 
+  private @NotNull String storeItem(@NotNull ItemStack content, boolean track) {
+    NestedReference reference = getNestedReference(content);
+    // Cards of cards store a reference to the inner card rather than the serialized card.
+    byte[] data = reference != null ? reference.encode() : content.serializeAsBytes();
+    String itemHash = calculateHash(content, reference, data, hash -> {
+      // Claim the hash while its lock is held so another item cannot be stored under it.
+      ChainSummary chain = summarize(hash, content, MAX_CHAIN_SCAN);
+      CaptchaRecord captchaRecord = reference != null
+          ? CaptchaRecord.nested(reference, chain)
+          : new CaptchaRecord(data, chain, dataVersion);
+      if (store.isShared()) {
+        if (!claimShared(hash, content, data, captchaRecord.encode(), track)) {
+          return false;
+        }
+      } else {
+        if (track) {
+          trackClaim(hash);
+        }
+        this.save(hash, captchaRecord.encode());
+      }
+      this.chains.put(hash, chain);
+      return true;
+    });
+    this.cache.synchronous().put(itemHash, content);
+    return itemHash;
+  }
+
+  private boolean claimShared(
+      @NotNull String hash,
+      @NotNull ItemStack content,
+      byte @NotNull [] data,
+      byte @NotNull [] encoded,
+      boolean track
+  ) {
+    try {
+      // Records already known to hold the same item need no round trip.
+      if (readRecord(hash) != null) {
+        if (track) {
+          references.touch(hash);
+        }
+        return true;
+      }
+
+      // Another server may claim the hash at any time, so the record must be stored before use.
+      byte[] existing = store.putIfAbsent(hash, encoded);
+      if (existing == null) {
+        if (track) {
+          references.track(hash);
+        }
+        serializedCache.put(hash, encoded);
+        missing.invalidate(hash);
+        return true;
+      }
+    } catch (IOException e) {
+      // Without the database, no hash can be safely claimed. Probing further hashes would fail the
+      // same way, so abort rather than issue a card another server may store different contents for.
+      throw new UncheckedIOException("Unable to claim shared card contents " + hash, e);
+    }
+
+    // Another server claimed the hash first. It is still usable if it holds the same item.
+    serializedCache.invalidate(hash);
+    cache.synchronous().invalidate(hash);
+    return isHashAvailable(hash, content, data);
+  }
+
+  private void trackClaim(@NotNull String hash) {
+    boolean stored;
+    try {
+      stored = readRecord(hash) != null;
+    } catch (IOException e) {
+      // Never start counting a record that may already have uncounted cards.
+      stored = true;
+    }
+
+    if (stored) {
+      // Restart the grace period of existing records, as another card is about to be issued.
+      references.touch(hash);
+    } else {
+      references.track(hash);
+    }
+  }
+
+  private @Nullable NestedReference getNestedReference(@NotNull ItemStack content) {
+    PersistentDataContainerView pdc = getCaptchaData(content);
+    // Exempt cards are stored in full so that they keep their exemption when opened.
+    if (pdc == null || pdc.has(KEY_SKIP_CONVERT)) {
+      return null;
+    }
+
+    String innerHash = pdc.get(KEY_HASH, PersistentDataType.STRING);
+    // Invalid cards have no contents to reference, so they are stored as-is.
+    if (innerHash == null || getChainSummary(innerHash) == null) {
+      return null;
+    }
+
+    return new NestedReference(innerHash, content.getAmount());
+  }
+
   /**
-   * Get a captchacard for the specified hash.
+   * Get a captchacard for the specified hash. The returned card is counted as live until it is
+   * {@link #release(String, int) released}.
    *
    * @param hash the hash
    * @return the captchacard
    */
   public @Nullable ItemStack getCaptchaForHash(@NotNull String hash) {
     ItemStack item = getItemByHash(hash);
+    return item == null ? null : issueCaptcha(hash, item);
+  }
+
+  /**
+   * Get a captchacard for the specified hash without blocking the calling thread on storage.
+   *
+   * <p>The returned future does not complete on the calling thread. Callers must return to the
+   * correct thread before modifying the world or any inventory.
+   *
+   * @param hash the hash
+   * @return a future completing with the captchacard or {@code null} if the hash is not stored
+   */
+  public @NotNull CompletableFuture<@Nullable ItemStack> getCaptchaForHashAsync(@NotNull String hash) {
+    // Building the card may read nested records, so it must not run on the read executor.
+    return getItemByHashAsync(hash).thenApplyAsync(item -> item == null ? null : issueCaptcha(hash, item));
+  }
+
+  private @Nullable ItemStack issueCaptcha(@NotNull String hash, @NotNull ItemStack item) {
+    ItemStack card = createCaptcha(hash, item);
+    if (card != null) {
+      references.adjust(hash, 1);
+    }
+    return card;
+  }
+
+  private @Nullable ItemStack createCaptcha(@NotNull String hash, @NotNull ItemStack item) {
+    return createCaptcha(hash, item, getChainSummary(hash));
+  }
 
+  private @Nullable ItemStack createCaptcha(
+      @NotNull String hash,
+      @NotNull ItemStack item,
+      @Nullable ChainSummary chain
+  ) {
     // Item not stored.
-    if (item == null || item.getType() == Material.AIR) {
+    if (item.getType() == Material.AIR) {
       return null;
     }
 
@@ -315,15 +1136,27 @@ public class CaptchaManager {
     dataContainer.remove(KEY_BLANK);
     dataContainer.set(KEY_HASH, PersistentDataType.STRING, hash);
 
+    // Summarize the chain on the card itself so that depth checks do not need to load contents.
+    if (chain != null) {
+      dataContainer.set(KEY_DEPTH, PersistentDataType.INTEGER, chain.depth());
+      dataContainer.set(KEY_ROOT_TYPE, PersistentDataType.STRING, chain.rootType());
+      dataContainer.set(KEY_ROOT_QUANTITY, PersistentDataType.LONG, chain.rootQuantity());
+    }
+
     // Add display elements for users.
-    setCaptchaContentsDisplay(hash, item, cardMeta);
+    setCaptchaContentsDisplay(hash, item, chain, cardMeta);
 
     card.setItemMeta(cardMeta);
     return card;
   }
 
-  private void setCaptchaContentsDisplay(@NotNull String hash, @NotNull ItemStack item, @NotNull ItemMeta cardMeta) {
-    Replacement[] replacements = getItemReplacements(hash, item);
+  private void setCaptchaContentsDisplay(
+      @NotNull String hash,
+      @NotNull ItemStack item,
+      @Nullable ChainSummary chain,
+      @NotNull ItemMeta cardMeta
+  ) {
+    Replacement[] replacements = getItemReplacements(hash, item, chain);
 
     List<Component> cardLore = new ArrayList<>();
     Component component = lang.getComponent((String) null, Messages.ITEM_FILLED_DESCRIPTOR, replacements);
@@ -345,7 +1178,11 @@ public class CaptchaManager {
     setCaptchaModelData(item, cardMeta);
   }
 
-  private @NotNull Replacement @NotNull [] getItemReplacements(@NotNull String hash, @NotNull ItemStack item) {
+  private @NotNull Replacement @NotNull [] getItemReplacements(
+      @NotNull String hash,
+      @NotNull ItemStack item,
+      @Nullable ChainSummary chain
+  ) {
     Replacement[] replacements = new Replacement[5];
 
     // Set final replacements to
@@ -353,53 +1190,25 @@ public class CaptchaManager {
     replacements[3] = new QuantityReplacement(item.getAmount());
     replacements[4] = new HashReplacement(hash.toUpperCase(Locale.ROOT));
 
-    // If the item is not a used captcha, the root is the current item.
-    if (!isUsedCaptcha(item)) {
+    // If the card does not contain other cards, the root is the current item.
+    if (chain == null || chain.depth() <= 1) {
       replacements[0] = new SimpleReplacement("rootContent", "{content}");
       replacements[1] = new SimpleReplacement("rootQuantity", "{quantity}");
       return replacements;
     }
 
-    int rootAmount = item.getAmount();
-    ItemStack rootItem = getItemByCaptcha(item);
-    while (isUsedCaptcha(rootItem)) {
-      // If the unpacked item is the same, it is invalid in some way.
-      if (rootItem.isSimilar(item)) {
-        break;
-      }
-      // For every stage, multiply by amount.
-      rootAmount *= rootItem.getAmount();
-      item = rootItem;
-      rootItem = getItemByCaptcha(item);
-    }
-
-    if (rootItem != null && !rootItem.isSimilar(item)) {
-      // If the fully-unpacked item exists and is valid, multiply by its amount.
-      rootAmount *= rootItem.getAmount();
-    } else {
-      // Otherwise, set root to last valid unpacking phase.
-      rootItem = item;
-    }
-
-    replacements[0] = new ItemNameReplacement("rootContent", rootItem);
-    replacements[1] = new SimpleReplacement("rootQuantity", String.valueOf(rootAmount));
+    replacements[0] = new SimpleReplacement("rootContent", chain.rootName());
+    replacements[1] = new SimpleReplacement("rootQuantity", String.valueOf(chain.rootQuantity()));
 
     return replacements;
   }
 
   @SuppressWarnings("UnstableApiUsage")
   private void setCaptchaModelData(@NotNull ItemStack item, @NotNull ItemMeta cardMeta) {
-    AtomicBoolean blank = new AtomicBoolean();
-    Predicate<PersistentDataContainer> consumer = pdc -> {
-      if (pdc.has(KEY_BLANK)) {
-        blank.set(true);
-        return true;
-      }
-      return pdc.has(KEY_HASH, PersistentDataType.STRING);
-    };
+    CaptchaIdentity identity = identify(item);
     List<String> modelStrings;
-    if (isCaptcha(item, consumer)) {
-      if (blank.get()) {
+    if (identity.isCaptcha()) {
+      if (identity.type() == CaptchaIdentity.Type.BLANK) {
         // For blanks, use blank identifier.
         modelStrings = List.of("captcha:blanks");
       } else {
@@ -448,6 +1257,32 @@ public class CaptchaManager {
     return captcha;
   }
 
+  /**
+   * Convert a captchacard into an ItemStack without blocking the calling thread on storage.
+   *
+   * <p>The returned future does not complete on the calling thread. Callers must return to the
+   * correct thread before modifying the world or any inventory.
+   *
+   * @param captcha the captchacard ItemStack
+   * @return a future completing with the ItemStack represented by this captchacard
+   * @see #getItemByCaptcha(ItemStack)
+   */
+  public @NotNull CompletableFuture<@Nullable ItemStack> getItemByCaptchaAsync(@Nullable ItemStack captcha) {
+    if (captcha == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    ItemStack invalid = captcha.clone();
+    invalid.setAmount(1);
+
+    String hashFromCaptcha = getHashFromCaptcha(captcha);
+    if (hashFromCaptcha == null) {
+      return CompletableFuture.completedFuture(invalid);
+    }
+
+    return getItemByHashAsync(hashFromCaptcha).thenApply(item -> item != null ? item : invalid);
+  }
+
   /**
    * Get an item by hash. Uses cache, loading from disk as necessary.
    *
@@ -456,60 +1291,531 @@ public class CaptchaManager {
    */
   @Nullable
   public ItemStack getItemByHash(@NotNull String hash) {
+    recordAccess(hash);
     try {
-      ItemStack itemStack = cache.get(hash);
+      ItemStack itemStack = cache.synchronous().get(hash);
       return itemStack != null ? new ItemStack(itemStack) : null;
     } catch (Exception e) {
-      if (!(e.getCause() instanceof FileNotFoundException)) {
-        logger.log(Level.WARNING, "Exception getting item by hash", e);
-      }
+      logger.log(Level.WARNING, "Exception getting item by hash", e);
       return null;
     }
   }
 
+  /**
+   * Get an item by hash without blocking the calling thread on storage.
+   *
+   * <p>The returned future does not complete on the calling thread. Callers must return to the
+   * correct thread before modifying the world or any inventory.
+   *
+   * @param hash the hash to get an item for
+   * @return a future completing with the item or {@code null} if the item has not been saved
+   */
+  public @NotNull CompletableFuture<@Nullable ItemStack> getItemByHashAsync(@NotNull String hash) {
+    recordAccess(hash);
+    return cache.get(hash).handle((itemStack, throwable) -> {
+      if (throwable != null) {
+        logger.log(Level.WARNING, "Exception getting item by hash", throwable);
+        return null;
+      }
+      return itemStack != null ? new ItemStack(itemStack) : null;
+    });
+  }
+
+  /**
+   * Get many items by hash. Items that are not in memory are read from storage in a single pass and
+   * decoded in parallel, which is considerably faster than looking each up individually.
+   *
+   * @param hashes the hashes to get items for
+   * @return the items by hash, excluding hashes that have not been saved
+   */
+  public @NotNull Map<String, ItemStack> getItemsByHash(@NotNull Collection<String> hashes) {
+    return loadItems(hashes, true);
+  }
+
+  /**
+   * Get many items by hash.
+   *
+   * @param hashes the hashes to get items for
+   * @param access whether this counts as the items being read, rather than only filling the caches
+   * @return the items by hash, excluding hashes that have not been saved
+   */
+  private @NotNull Map<String, ItemStack> loadItems(@NotNull Collection<String> hashes, boolean access) {
+    Map<String, ItemStack> items = new HashMap<>();
+    Map<String, byte[]> records = new HashMap<>();
+    Set<String> unread = new HashSet<>();
+
+    for (String hash : new HashSet<>(hashes)) {
+      if (access) {
+        recordAccess(hash);
+      }
+      CompletableFuture<ItemStack> future = cache.getIfPresent(hash);
+      if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+        ItemStack itemStack = future.join();
+        if (itemStack != null) {
+          items.put(hash, new ItemStack(itemStack));
+        }
+        continue;
+      }
+
+      byte[] data = writeQueue.getPending(hash);
+      if (data == null) {
+        data = serializedCache.getIfPresent(hash);
+      }
+      if (data != null) {
+        records.put(hash, data);
+      } else {
+        unread.add(hash);
+      }
+    }
+
+    if (!unread.isEmpty()) {
+      try {
+        long start = System.nanoTime();
+        Map<String, byte[]> stored = store.getAll(unread);
+        long bytes = 0;
+        for (byte[] data : stored.values()) {
+          bytes += data.length;
+        }
+        metrics.recordDiskRead((int) Math.min(Integer.MAX_VALUE, bytes), System.nanoTime() - start);
+        serializedCache.putAll(stored);
+        records.putAll(stored);
+        unread.removeAll(stored.keySet());
+
+        // Anything left may be archived or still in legacy storage. Archived records are only
+        // worth restoring to live storage if they are actually being read.
+        if (migrating || (access && !archive.isEmpty())) {
+          for (String hash : unread) {
+            byte[] data = migrating ? readStoredRecord(hash) : readArchived(hash);
+            if (data != null) {
+              serializedCache.put(hash, data);
+              records.put(hash, data);
+            }
+          }
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Exception reading stored card contents", e);
+      }
+    }
+
+    // Decoding dominates, so spread it across the common pool.
+    Map<String, ItemStack> decoded = new ConcurrentHashMap<>();
+    records.entrySet().parallelStream().forEach(entry -> {
+      try {
+        ItemStack itemStack = decodeItem(entry.getValue(), access);
+        if (itemStack != null) {
+          decoded.put(entry.getKey(), itemStack);
+        }
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Exception decoding card contents " + entry.getKey(), e);
+      }
+    });
+
+    cache.synchronous().putAll(decoded);
+    decoded.forEach((hash, itemStack) -> {
+      if (access) {
+        canonicalizeLater(hash);
+      }
+      items.put(hash, new ItemStack(itemStack));
+    });
+    return items;
+  }
+
+  /**
+   * Get an item by hash only if it is already decoded in memory. Never touches storage.
+   *
+   * @param hash the hash to get an item for
+   * @return the item or {@code null} if the item is not loaded
+   */
+  public @Nullable ItemStack getLoadedItemByHash(@NotNull String hash) {
+    CompletableFuture<ItemStack> future = cache.getIfPresent(hash);
+    ItemStack itemStack = null;
+    if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+      itemStack = future.join();
+    }
+    if (itemStack != null) {
+      recordAccess(hash);
+    }
+
+    // Only the first lookup after a prefetch is attributed to it.
+    if (prefetched.asMap().remove(hash) != null) {
+      metrics.recordPrefetchLookup(itemStack != null);
+    }
+
+    return itemStack != null ? new ItemStack(itemStack) : null;
+  }
+
+  /**
+   * Begin loading an item in the background in anticipation of it being used. Prefetches are best
+   * effort: hashes that are already loaded or recently prefetched are ignored, and requests in excess
+   * of the configured rate are dropped.
+   *
+   * @param hash the hash to load
+   */
+  public void prefetch(@NotNull String hash) {
+    if (prefetchRate <= 0) {
+      return;
+    }
+
+    // Already decoded or being loaded.
+    if (cache.asMap().containsKey(hash) || prefetched.asMap().putIfAbsent(hash, Boolean.TRUE) != null) {
+      metrics.recordPrefetchSkipped();
+      return;
+    }
+
+    if (!tryAcquirePrefetch()) {
+      prefetched.invalidate(hash);
+      metrics.recordPrefetchDropped();
+      return;
+    }
+
+    metrics.recordPrefetch();
+    cache.get(hash);
+  }
+
+  private boolean tryAcquirePrefetch() {
+    long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    long window = prefetchWindow.get();
+    if (window != second && prefetchWindow.compareAndSet(window, second)) {
+      prefetchPermits.set(0);
+    }
+    return prefetchPermits.incrementAndGet() <= prefetchRate;
+  }
+
   /**
    * Calculate a hash for an item. Handles collisions by incrementing hash by 1.
    *
+   * <p>Hashes are {@link ItemFingerprint fingerprints} of the item's {@link CanonicalItem canonical
+   * form}, so the same item keeps its hash across server updates. Cards created with older hashes
+   * continue to resolve by their stored hash, which is redirected to the canonical hash once read.
+   *
    * @param item the item to calculate a hash for
    * @return the calculated hash
    */
   public @NotNull String calculateHashForItem(@NotNull ItemStack item) {
-    // Calculate MD5 of item NBT.
-    BigInteger hash;
+    NestedReference reference = getNestedReference(item);
+    byte[] data = reference != null ? reference.encode() : item.serializeAsBytes();
+    return calculateHash(item, reference, data, null);
+  }
+
+  private @NotNull String calculateHash(
+      @NotNull ItemStack item,
+      @Nullable NestedReference reference,
+      byte @NotNull [] data,
+      @Nullable Predicate<@NotNull String> claim
+  ) {
+    long start = System.nanoTime();
+    // A reference is already independent of the data version, as it only contains a hash and amount.
+    byte[] canonical = reference != null ? reference.encode() : CanonicalItem.encode(item);
+    ItemFingerprint fingerprint = ItemFingerprint.of(ItemFingerprint.CANONICAL, canonical);
+
+    while (true) {
+      String itemHash = fingerprint.encode();
+      // Check and claim atomically so that concurrent captures of colliding items cannot both win.
+      synchronized (getHashLock(itemHash)) {
+        if (isHashAvailable(itemHash, item, data) && (claim == null || claim.test(itemHash))) {
+          metrics.recordHash(System.nanoTime() - start);
+          return itemHash;
+        }
+      }
+
+      // If a collision occurs, increment hash value.
+      metrics.recordCollisionProbe();
+      fingerprint = fingerprint.next();
+    }
+  }
+
+  private void canonicalizeLater(@NotNull String hash) {
+    if (ItemFingerprint.getVersion(hash) >= ItemFingerprint.CANONICAL
+        || canonicalized.asMap().putIfAbsent(hash, Boolean.TRUE) != null) {
+      return;
+    }
+
+    // Storing the canonical record reads other records, so it must not run on the read executor.
+    CompletableFuture.runAsync(() -> canonicalize(hash));
+  }
+
+  private void canonicalize(@NotNull String hash) {
     try {
-      MessageDigest digest = MessageDigest.getInstance("MD5");
-      hash = new BigInteger(1, digest.digest(item.serializeAsBytes()));
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
+      // Only records that have reached the store are redirected. Anything else is retried next read.
+      byte[] data = store.get(hash);
+      if (data == null) {
+        canonicalized.invalidate(hash);
+        return;
+      }
+      if (CaptchaRecord.getAliasTarget(data) != null) {
+        return;
+      }
+
+      ItemStack item = decodeItem(data);
+      if (item == null) {
+        return;
+      }
+
+      String target = storeItem(item, false);
+      // Cards issued before the alias existed are uncounted, so the target must never be collected.
+      references.untrack(target);
+      byte[] alias = CaptchaRecord.alias(target).encode();
+      ioExecutor.execute(() -> {
+        // The canonical record must be durable before the original is superseded.
+        writeQueue.flush();
+        if (writeQueue.getPending(target) != null) {
+          canonicalized.invalidate(hash);
+          return;
+        }
+        try {
+          store.replace(hash, alias);
+          serializedCache.invalidate(hash);
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Error storing card alias", e);
+        }
+      });
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Exception canonicalizing card contents " + hash, e);
+    } catch (UncheckedIOException e) {
+      // The canonical hash could not be claimed, retry next read.
+      logger.log(Level.WARNING, "Exception canonicalizing card contents " + hash, e);
+      canonicalized.invalidate(hash);
+    } catch (RejectedExecutionException e) {
+      // Shutting down, hash will be canonicalized next time it is read.
     }
+  }
 
-    // Convert to base 36.
-    String itemHash = hash.toString(Character.MAX_RADIX);
+  private @NotNull Object getHashLock(@NotNull String hash) {
+    int spread = hash.hashCode();
+    spread ^= spread >>> 16;
+    return hashLocks[spread & (HASH_LOCK_STRIPES - 1)];
+  }
 
-    // If a collision occurs, increment hash value.
-    ItemStack captcha;
-    while ((captcha = getItemByHash(itemHash)) != null && !captcha.equals(item)) {
-      hash = hash.add(BigInteger.ONE);
-      itemHash = hash.toString(Character.MAX_RADIX);
+  private boolean isHashAvailable(@NotNull String hash, @NotNull ItemStack item, byte @NotNull [] data) {
+    byte[] stored;
+    try {
+      stored = readRecord(hash);
+      if (stored != null) {
+        stored = CaptchaRecord.decode(stored).item();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Exception reading stored card contents", e);
+      // Fall back to comparing the decoded item.
+      ItemStack storedItem = getItemByHash(hash);
+      return storedItem == null || storedItem.equals(item);
     }
 
-    return itemHash;
+    // Unused hashes and identical serialized data are both usable. Compressed records are repacked
+    // on read, so their data is compared unpacked rather than byte for byte.
+    if (stored == null || CompressedStore.isSameItem(stored, data)) {
+      return true;
+    }
+
+    // Equal items may still serialize differently, i.e. if stored under an older data version.
+    ItemStack storedItem = getItemByHash(hash);
+    return storedItem != null && storedItem.equals(item);
   }
 
   private void save(@NotNull String hash, @NotNull ItemStack item) {
+    // Records are saved when captured. Only write if that has somehow been lost, as re-encoding
+    // would replace a nested record's reference with the serialized card.
     try {
-      Files.createDirectories(dataDir);
-      Path hashPath = dataDir.resolve(hash + ".nbt");
-      if (Files.exists(hashPath)) {
+      if (writeQueue.getPending(hash) != null || store.contains(hash) || archive.contains(hash)) {
         return;
       }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Exception checking stored card contents", e);
+      return;
+    }
+    save(hash, new CaptchaRecord(item.serializeAsBytes(), chains.getIfPresent(hash), dataVersion).encode());
+  }
 
-      try (OutputStream out = Files.newOutputStream(hashPath)) {
-        out.write(item.serializeAsBytes());
-      }
+  private @Nullable CaptchaRecord readCaptchaRecord(@NotNull String hash) {
+    try {
+      byte[] data = readRecord(hash);
+      return data == null ? null : CaptchaRecord.decode(data);
     } catch (IOException e) {
-      logger.log(Level.WARNING, "Error writing card contents", e);
+      logger.log(Level.WARNING, "Exception reading stored card contents", e);
+      return null;
+    }
+  }
+
+  private void save(@NotNull String hash, byte @NotNull [] data) {
+    writeQueue.enqueue(hash, data);
+    serializedCache.put(hash, data);
+    missing.invalidate(hash);
+  }
+
+  private @Nullable ItemStack decodeItem(byte @NotNull [] data) throws IOException {
+    return decodeItem(data, true);
+  }
+
+  private @Nullable ItemStack decodeItem(byte @NotNull [] data, boolean access) throws IOException {
+    long start = System.nanoTime();
+    CaptchaRecord captchaRecord = CaptchaRecord.decode(data);
+    String aliasTarget = captchaRecord.aliasTarget();
+    if (aliasTarget != null) {
+      byte[] targetData = readRecord(aliasTarget, access);
+      if (targetData == null) {
+        return null;
+      }
+      captchaRecord = CaptchaRecord.decode(targetData);
     }
+
+    NestedReference reference = captchaRecord.reference();
+    ItemStack item = switch (captchaRecord.kind()) {
+      case ITEM -> ItemStack.deserializeBytes(captchaRecord.item());
+      case NESTED -> resolveNested(Objects.requireNonNull(reference), access);
+      // Aliases are only ever written for canonical hashes, which are never themselves aliased.
+      case ALIAS -> null;
+    };
+    metrics.recordDeserialize(System.nanoTime() - start);
+    return item;
+  }
+
+  private @Nullable ItemStack resolveNested(@NotNull NestedReference reference, boolean access) throws IOException {
+    // This runs inside cache loads, so it must read records directly rather than wait on the cache.
+    String innerHash = reference.hash();
+    byte[] innerData = readRecord(innerHash, access);
+    if (innerData == null) {
+      return null;
+    }
+
+    CaptchaRecord innerRecord = CaptchaRecord.decode(innerData);
+    // Depth is capped, so the inner record always contains an item rather than another reference.
+    if (innerRecord.kind() != CaptchaRecord.Kind.ITEM) {
+      logger.warning(() -> "Nested card references nested card " + innerHash);
+      return null;
+    }
+
+    ItemStack innerItem = ItemStack.deserializeBytes(innerRecord.item());
+    ChainSummary innerChain = innerRecord.chain();
+    if (innerChain == null) {
+      innerChain = summarize(innerHash, innerItem, 0);
+    }
+
+    // Rebuild the inner card from the current language and card format.
+    ItemStack card = createCaptcha(innerHash, innerItem, innerChain);
+    if (card != null) {
+      card.setAmount(reference.amount());
+    }
+    return card;
+  }
+
+  private byte @Nullable [] readRecord(@NotNull String hash) throws IOException {
+    return readRecord(hash, true);
+  }
+
+  private byte @Nullable [] readRecord(@NotNull String hash, boolean access) throws IOException {
+    byte[] data = readRawRecord(hash);
+    if (data == null) {
+      return null;
+    }
+
+    // Also covers records only reached through others, such as the contents of nested cards.
+    if (access) {
+      recordAccess(hash);
+    }
+    String aliasTarget = CaptchaRecord.getAliasTarget(data);
+    if (aliasTarget == null) {
+      return data;
+    }
+    // Aliases always point at canonical hashes, so a single hop reaches the contents.
+    if (access) {
+      recordAccess(aliasTarget);
+    }
+    return readRawRecord(aliasTarget);
+  }
+
+  private byte @Nullable [] readRawRecord(@NotNull String hash) throws IOException {
+    // Records that have not been written yet are served from memory.
+    byte[] data = writeQueue.getPending(hash);
+    if (data != null) {
+      return data;
+    }
+
+    data = serializedCache.getIfPresent(hash);
+    if (data != null) {
+      return data;
+    }
+
+    data = readStoredRecord(hash);
+    if (data != null) {
+      serializedCache.put(hash, data);
+    }
+    return data;
+  }
+
+  private byte @Nullable [] readStoredRecord(@NotNull String hash) throws IOException {
+    // Segment storage holds its index in memory, so a miss there never touches the disk.
+    byte[] data = readMetered(hash);
+    if (data == null) {
+      data = readArchived(hash);
+    }
+    if (data != null || !migrating) {
+      return data;
+    }
+
+    // While migrating, only probe legacy files for hashes not already known to be missing.
+    if (missing.getIfPresent(hash) != null) {
+      return null;
+    }
+
+    try {
+      long start = System.nanoTime();
+      data = Files.readAllBytes(migrator.getLegacyPath(hash));
+      metrics.recordDiskRead(data.length, System.nanoTime() - start);
+      return data;
+    } catch (NoSuchFileException e) {
+      // File may have been migrated between checks.
+      data = readMetered(hash);
+      if (data == null) {
+        missing.put(hash, Boolean.TRUE);
+      }
+      return data;
+    }
+  }
+
+  private byte @Nullable [] readArchived(@NotNull String hash) throws IOException {
+    if (archive.isEmpty()) {
+      return null;
+    }
+
+    long start = System.nanoTime();
+    byte[] data = archive.get(hash);
+    if (data != null) {
+      metrics.recordDiskRead(data.length, System.nanoTime() - start);
+      metrics.recordColdHit();
+      // Read again, so return it to live storage. Packs are read-only, so the archived copy stays.
+      writeQueue.enqueue(hash, data);
+    }
+    return data;
+  }
+
+  private byte @Nullable [] readMetered(@NotNull String hash) throws IOException {
+    long start = System.nanoTime();
+    byte[] data = store.get(hash);
+    if (data != null) {
+      metrics.recordDiskRead(data.length, System.nanoTime() - start);
+    }
+    return data;
+  }
+
+  /**
+   * A {@link RecordSink} recording write volume and latency. Each batch sync is recorded as a
+   * separate zero-byte write, as that is where the actual disk cost lies.
+   */
+  private record MeteredSink(@NotNull CaptchaStore store, @NotNull CaptchaMetrics metrics) implements RecordSink {
+
+    @Override
+    public void write(@NotNull String hash, byte @NotNull [] data) throws IOException {
+      long start = System.nanoTime();
+      store.write(hash, data);
+      metrics.recordDiskWrite(data.length, System.nanoTime() - start);
+    }
+
+    @Override
+    public void sync() throws IOException {
+      long start = System.nanoTime();
+      store.sync();
+      metrics.recordDiskWrite(0, System.nanoTime() - start);
+    }
+
   }
 
 }
@@ -3,7 +3,9 @@ package com.github.jikoo.captcha;
 import com.github.jikoo.captcha.command.CaptchaCommand;
 import com.github.jikoo.captcha.listener.CraftingListener;
 import com.github.jikoo.captcha.listener.MisuseListener;
+import com.github.jikoo.captcha.listener.PrefetchListener;
 import com.github.jikoo.captcha.listener.UseListener;
+import com.github.jikoo.captcha.metrics.CaptchaMetricsBean;
 import com.github.jikoo.captcha.util.lang.ComponentLangManager;
 import com.github.jikoo.captcha.util.lang.Messages;
 import com.github.jikoo.planarwrappers.lang.Message;
@@ -12,8 +14,14 @@ import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.ShapelessRecipe;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.util.logging.Level;
 
 /**
  * A plugin adding bulk storage in the form of captchacards.
@@ -22,8 +30,13 @@ import org.jetbrains.annotations.NotNull;
  */
 public class CaptchaPlugin extends JavaPlugin {
 
+  private @Nullable CaptchaManager captcha;
+
   @Override
   public void onEnable() {
+    saveDefaultConfig();
+    CaptchaConfig config = new CaptchaConfig(getConfig());
+
     ComponentLangManager lang = new ComponentLangManager(
         new PluginLocaleProvider(this) {
           @Override
@@ -33,7 +46,17 @@ public class CaptchaPlugin extends JavaPlugin {
         }
     );
 
-    CaptchaManager captcha = new CaptchaManager(getDataPath().resolve("captcha"), lang, getLogger());
+    CaptchaManager captcha;
+    try {
+      captcha = new CaptchaManager(getDataPath().resolve("captcha"), config, lang, getLogger());
+    } catch (IOException e) {
+      getLogger().log(Level.SEVERE, "Unable to open card storage", e);
+      getServer().getPluginManager().disablePlugin(this);
+      return;
+    }
+    this.captcha = captcha;
+    // Expose the manager to other plugins.
+    getServer().getServicesManager().register(CaptchaManager.class, captcha, this, ServicePriority.Normal);
 
     // Add captchacard recipes.
     for (int i = 1; i < 5; ++i) {
@@ -52,13 +75,52 @@ public class CaptchaPlugin extends JavaPlugin {
 
     // TODO allow crafting x + blank captcha to captcha
 
-    getServer().getPluginManager().registerEvents(new UseListener(captcha, getLogger()), this);
-    getServer().getPluginManager().registerEvents(new CraftingListener(lang, captcha), this);
+    getServer().getPluginManager().registerEvents(new UseListener(this, captcha, getLogger()), this);
+    getServer().getPluginManager().registerEvents(new CraftingListener(this, lang, captcha), this);
     getServer().getPluginManager().registerEvents(new MisuseListener(), this);
+    if (config.getPrefetchRate() > 0) {
+      getServer().getPluginManager().registerEvents(new PrefetchListener(captcha), this);
+    }
 
     CaptchaCommand baseCommand = new CaptchaCommand(this, lang, captcha);
     getServer().getCommandMap().register("captcha", baseCommand);
     getServer().getCommandMap().registerAll("captcha", baseCommand.getRegisterableCommands());
+
+    try {
+      new CaptchaMetricsBean(captcha).register();
+    } catch (JMException e) {
+      getLogger().log(Level.WARNING, "Unable to register metrics with JMX", e);
+    }
+  }
+
+  /**
+   * Get the {@link CaptchaManager} in use by the plugin.
+   *
+   * @return the captcha manager
+   * @throws IllegalStateException if the plugin is not enabled
+   */
+  public @NotNull CaptchaManager getCaptchaManager() {
+    if (captcha == null) {
+      throw new IllegalStateException("Captcha manager is not available while disabled!");
+    }
+    return captcha;
+  }
+
+  @Override
+  public void onDisable() {
+    try {
+      CaptchaMetricsBean.unregister();
+    } catch (JMException e) {
+      getLogger().log(Level.WARNING, "Unable to unregister metrics from JMX", e);
+    }
+
+    getServer().getServicesManager().unregisterAll(this);
+
+    if (captcha != null) {
+      // Drain any card contents that have not been written yet.
+      captcha.close();
+      captcha = null;
+    }
   }
 
 }
@@ -83,7 +83,8 @@ public class CaptchaBatchCommand extends Command implements PluginIdentifiableCo
 
     // Attempt to create a filled captchacard for the item being stored.
     ItemStack captchaForItem = getFilledCaptcha(storingBlanks, item, itemMaxStack);
-    if (captchaForItem == null) {
+    String hash = CaptchaManager.getHashFromCaptcha(captchaForItem);
+    if (captchaForItem == null || hash == null) {
       lang.sendComponent(sender, Messages.COMMAND_DENIAL_CANNOT_CAPTCHA);
       return true;
     }
@@ -105,6 +106,8 @@ public class CaptchaBatchCommand extends Command implements PluginIdentifiableCo
 
     // If there aren't enough items for at least one stack, deny.
     if (similar.amount < itemMaxStack) {
+      // The card created for the item is discarded.
+      captcha.release(hash, 1);
       lang.sendComponent(sender, Messages.COMMAND_BATCH_DENIAL_NOT_MAX);
       return true;
     }
@@ -125,6 +128,8 @@ public class CaptchaBatchCommand extends Command implements PluginIdentifiableCo
 
     // Add filled card stack to inventory, dropping any failures.
     captchaForItem.setAmount(stacks);
+    // The card was counted once when created.
+    captcha.retain(hash, stacks - 1);
     for (Map.Entry<Integer, ItemStack> failure : inventory.addItem(captchaForItem).entrySet()) {
       player.getWorld().dropItem(player.getLocation(), failure.getValue()).setPickupDelay(0);
     }
@@ -37,6 +37,7 @@ public class CaptchaCommand extends Command implements PluginIdentifiableCommand
     subcommands.put("unique", new CaptchaUniqueCommand(lang));
     subcommands.put("convert", new CaptchaConvertCommand(lang, captcha));
     subcommands.put("batch", new CaptchaBatchCommand(plugin, lang, captcha));
+    subcommands.put("stats", new CaptchaStatsCommand(lang, captcha));
 
     setDescription("General captchacard management command");
     setPermissions();
@@ -1,5 +1,6 @@
 package com.github.jikoo.captcha.command;
 
+import com.github.jikoo.captcha.CaptchaIdentity;
 import com.github.jikoo.captcha.CaptchaManager;
 import com.github.jikoo.captcha.util.lang.ComponentLangManager;
 import com.github.jikoo.captcha.util.lang.Messages;
@@ -8,16 +9,17 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.persistence.PersistentDataContainer;
-import org.bukkit.persistence.PersistentDataType;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Predicate;
+import java.util.Map;
+import java.util.Set;
 
 public class CaptchaConvertCommand extends Command {
 
@@ -50,33 +52,46 @@ public class CaptchaConvertCommand extends Command {
   private int convert(@NotNull Player player) {
     int conversions = 0;
     List<Integer> depthAmounts = new ArrayList<>();
+    List<String> oldHashes = new ArrayList<>();
+    List<String> newHashes = new ArrayList<>();
+    Map<String, ItemStack> resolved = resolveAll(player.getInventory().getContents());
     for (int i = 0; i < player.getInventory().getSize(); i++) {
       ItemStack baseItem = player.getInventory().getItem(i);
 
       String originalHash = getHash(baseItem);
-      // If there's no hash, not a captcha.
+      // If there's no hash, not a captcha or exempt from conversion.
       if (originalHash == null) {
+        // Exempt cards keep their hash, but still gain a depth summary.
+        if (captcha.backfillChainSummary(baseItem)) {
+          player.getInventory().setItem(i, baseItem);
+        }
         continue;
       }
 
       // Start storing amounts of each layer to rebuild.
       depthAmounts.clear();
       depthAmounts.add(baseItem.getAmount());
+      oldHashes.clear();
+      oldHashes.add(originalHash);
 
-      ItemStack itemStack = deconstructCaptcha(originalHash, depthAmounts);
+      ItemStack itemStack = deconstructCaptcha(originalHash, depthAmounts, oldHashes, resolved);
 
       // If stored item is null, final captcha is invalid. Ignore.
       if (itemStack == null) {
         continue;
       }
 
-      itemStack = reconstructCaptcha(itemStack, depthAmounts);
+      newHashes.clear();
+      itemStack = reconstructCaptcha(itemStack, depthAmounts, newHashes);
 
       // If reconstructed item is null, can't recreate for some reason.
       if (itemStack == null) {
         continue;
       }
 
+      updateReferences(depthAmounts, oldHashes, newHashes);
+
+      // Rebuilt cards always carry a depth summary, so older cards are replaced even if unchanged.
       if (!baseItem.equals(itemStack)) {
         player.getInventory().setItem(i, itemStack);
         conversions += itemStack.getAmount();
@@ -85,7 +100,23 @@ public class CaptchaConvertCommand extends Command {
     return conversions;
   }
 
-  private @Nullable ItemStack reconstructCaptcha(ItemStack storedItem, List<Integer> depthAmounts) {
+  private void updateReferences(List<Integer> depthAmounts, List<String> oldHashes, List<String> newHashes) {
+    // Every card at a depth exists once per card containing it, so live counts multiply by depth.
+    long cards = 1;
+    for (int depth = 0; depth < depthAmounts.size(); ++depth) {
+      cards *= depthAmounts.get(depth);
+      int amount = (int) Math.min(Integer.MAX_VALUE, cards);
+      captcha.release(oldHashes.get(depth), amount);
+      // Each new card was counted once when created.
+      captcha.retain(newHashes.get(depth), amount - 1);
+    }
+  }
+
+  private @Nullable ItemStack reconstructCaptcha(
+      ItemStack storedItem,
+      List<Integer> depthAmounts,
+      List<String> newHashes
+  ) {
     // If the store item is a blank captcha, update it as well.
     if (CaptchaManager.isBlankCaptcha(storedItem)) {
       int amount = storedItem.getAmount();
@@ -103,20 +134,58 @@ public class CaptchaConvertCommand extends Command {
         break;
       }
 
+      // Cards are created innermost first.
+      newHashes.addFirst(CaptchaManager.getHashFromCaptcha(storedItem));
       storedItem.setAmount(depthIterator.previous());
     }
     return storedItem;
   }
 
-  private @Nullable ItemStack deconstructCaptcha(String originalHash, List<Integer> depthAmounts) {
+  @SuppressWarnings("MultipleNullnessAnnotations") // False positive for non-null array with nullable elements.
+  private @NotNull Map<String, ItemStack> resolveAll(@Nullable ItemStack @NotNull [] contents) {
+    Set<String> unresolved = new HashSet<>();
+    for (ItemStack itemStack : contents) {
+      String hash = getHash(itemStack);
+      if (hash != null) {
+        unresolved.add(hash);
+      }
+    }
+
+    // Look up each nesting level in bulk rather than card by card.
+    Map<String, ItemStack> resolved = new HashMap<>();
+    while (!unresolved.isEmpty()) {
+      Map<String, ItemStack> level = captcha.getItemsByHash(unresolved);
+      resolved.putAll(level);
+      unresolved = new HashSet<>();
+      for (ItemStack itemStack : level.values()) {
+        String hash = getHash(itemStack);
+        if (hash != null && !resolved.containsKey(hash)) {
+          unresolved.add(hash);
+        }
+      }
+    }
+
+    return resolved;
+  }
+
+  private @Nullable ItemStack deconstructCaptcha(
+      String originalHash,
+      List<Integer> depthAmounts,
+      List<String> depthHashes,
+      Map<String, ItemStack> resolved
+  ) {
     String hash = originalHash;
     ItemStack storedItem;
     // Fully de-captcha stored item.
     while (true) {
-      storedItem = captcha.getItemByHash(hash);
+      storedItem = resolved.get(hash);
+      if (storedItem != null) {
+        storedItem = storedItem.clone();
+      }
       hash = getHash(storedItem);
       if (hash != null) {
         depthAmounts.add(storedItem.getAmount());
+        depthHashes.add(hash);
       } else {
         break;
       }
@@ -125,25 +194,16 @@ public class CaptchaConvertCommand extends Command {
     return storedItem;
   }
 
+  @Contract("null -> null")
   private @Nullable String getHash(@Nullable ItemStack potentialCaptcha) {
-    if (potentialCaptcha == null) {
+    CaptchaIdentity identity = CaptchaManager.identify(potentialCaptcha);
+    if (identity.type() != CaptchaIdentity.Type.USED
+        || potentialCaptcha == null
+        || potentialCaptcha.getPersistentDataContainer().has(CaptchaManager.KEY_SKIP_CONVERT)) {
       return null;
     }
 
-    AtomicReference<String> hash = new AtomicReference<>();
-    Predicate<PersistentDataContainer> predicate = pdc -> {
-      if (pdc.has(CaptchaManager.KEY_SKIP_CONVERT)) {
-        return false;
-      }
-      hash.set(pdc.get(CaptchaManager.KEY_HASH, PersistentDataType.STRING));
-      return true;
-    };
-
-    if (CaptchaManager.isCaptcha(potentialCaptcha, predicate)) {
-      return hash.get();
-    }
-
-    return null;
+    return identity.hash();
   }
 
   @Override
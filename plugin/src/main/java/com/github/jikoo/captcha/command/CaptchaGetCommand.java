@@ -9,12 +9,8 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.Locale;
 
 public class CaptchaGetCommand extends Command {
 
@@ -65,20 +61,7 @@ public class CaptchaGetCommand extends Command {
       return List.of();
     }
 
-    try (Stream<Path> pathStream = Files.list(captcha.getDataDir())){
-      return pathStream
-          .map(path -> {
-            String string = path.getFileName().toString();
-            if (!string.endsWith(".nbt")) {
-              return null;
-            }
-            return string.substring(0, string.length() - 4);
-          })
-          .filter(Objects::nonNull)
-          .toList();
-    } catch (IOException e) {
-      return List.of();
-    }
+    return captcha.completeStoredHash(args[0].toLowerCase(Locale.ROOT));
   }
 
 }
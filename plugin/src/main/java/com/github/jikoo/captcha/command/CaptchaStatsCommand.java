@@ -0,0 +1,122 @@
+package com.github.jikoo.captcha.command;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.jikoo.captcha.CaptchaManager;
+import com.github.jikoo.captcha.metrics.CaptchaMetrics;
+import com.github.jikoo.captcha.metrics.LatencyHistogram;
+import com.github.jikoo.captcha.util.lang.ComponentLangManager;
+import com.github.jikoo.captcha.util.lang.Messages;
+import com.github.jikoo.captcha.util.lang.SimpleReplacement;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Locale;
+
+public class CaptchaStatsCommand extends Command {
+
+  private final @NotNull ComponentLangManager lang;
+  private final @NotNull CaptchaManager captcha;
+
+  CaptchaStatsCommand(@NotNull ComponentLangManager lang, @NotNull CaptchaManager captcha) {
+    super("stats");
+    this.lang = lang;
+    this.captcha = captcha;
+    setPermission("captcha.command.stats.use");
+  }
+
+  @Override
+  public boolean execute(
+      @NotNull CommandSender sender,
+      @NotNull String commandLabel,
+      @NotNull String @NotNull [] args
+  ) {
+    sendCacheStats(sender, "Decoded", captcha.getDecodedCacheStats());
+    sendCacheStats(sender, "Serialized", captcha.getSerializedCacheStats());
+
+    CaptchaMetrics metrics = captcha.getMetrics();
+    lang.sendComponent(
+        sender,
+        Messages.COMMAND_STATS_OPERATIONS,
+        new SimpleReplacement("captures", String.valueOf(metrics.getCaptures())),
+        new SimpleReplacement("opens", String.valueOf(metrics.getOpens())),
+        new SimpleReplacement("probes", String.valueOf(metrics.getCollisionProbes())),
+        new SimpleReplacement("pending", String.valueOf(captcha.getPendingWrites()))
+    );
+
+    sendLatency(sender, "Hash", metrics.getHashLatency());
+    sendLatency(sender, "Deserialize", metrics.getDeserializeLatency());
+    sendLatency(sender, "Disk read", metrics.getDiskReadLatency());
+    sendLatency(sender, "Disk write", metrics.getDiskWriteLatency());
+
+    lang.sendComponent(
+        sender,
+        Messages.COMMAND_STATS_STORAGE,
+        new SimpleReplacement("read", formatBytes(metrics.getDiskReadBytes())),
+        new SimpleReplacement("written", formatBytes(metrics.getDiskWriteBytes()))
+    );
+
+    lang.sendComponent(
+        sender,
+        Messages.COMMAND_STATS_PREFETCH,
+        new SimpleReplacement("count", String.valueOf(metrics.getPrefetches())),
+        new SimpleReplacement("skipped", String.valueOf(metrics.getPrefetchesSkipped())),
+        new SimpleReplacement("dropped", String.valueOf(metrics.getPrefetchesDropped())),
+        new SimpleReplacement("hitRate", String.format(Locale.ROOT, "%.1f", metrics.getPrefetchHitRate() * 100)),
+        new SimpleReplacement("lookups", String.valueOf(metrics.getPrefetchHits() + metrics.getPrefetchMisses()))
+    );
+
+    lang.sendComponent(
+        sender,
+        Messages.COMMAND_STATS_ARCHIVE,
+        new SimpleReplacement("records", String.valueOf(captcha.getArchivedCount())),
+        new SimpleReplacement("packs", String.valueOf(captcha.getArchivePackCount())),
+        new SimpleReplacement("coldHits", String.valueOf(metrics.getColdHits())),
+        new SimpleReplacement("coldHitRate", String.format(Locale.ROOT, "%.1f", metrics.getColdHitRate() * 100))
+    );
+    return true;
+  }
+
+  private void sendCacheStats(@NotNull CommandSender sender, @NotNull String tier, @NotNull CacheStats stats) {
+    lang.sendComponent(
+        sender,
+        Messages.COMMAND_STATS_CACHE,
+        new SimpleReplacement("tier", tier),
+        new SimpleReplacement("hitRate", String.format(Locale.ROOT, "%.1f", stats.hitRate() * 100)),
+        new SimpleReplacement("requests", String.valueOf(stats.requestCount())),
+        new SimpleReplacement("evictions", String.valueOf(stats.evictionCount()))
+    );
+  }
+
+  private void sendLatency(@NotNull CommandSender sender, @NotNull String operation, @NotNull LatencyHistogram histogram) {
+    lang.sendComponent(
+        sender,
+        Messages.COMMAND_STATS_LATENCY,
+        new SimpleReplacement("operation", operation),
+        new SimpleReplacement("count", String.valueOf(histogram.getCount())),
+        new SimpleReplacement("mean", String.format(Locale.ROOT, "%.3f", histogram.getMeanMillis())),
+        new SimpleReplacement("p99", String.format(Locale.ROOT, "%.3f", histogram.getPercentileMillis(0.99)))
+    );
+  }
+
+  private static @NotNull String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + "B";
+    }
+    if (bytes < 1024 * 1024) {
+      return String.format(Locale.ROOT, "%.1fKiB", bytes / 1024.0);
+    }
+    return String.format(Locale.ROOT, "%.1fMiB", bytes / (1024.0 * 1024));
+  }
+
+  @Override
+  public @NotNull List<String> tabComplete(
+      @NotNull CommandSender sender,
+      @NotNull String alias,
+      @NotNull String @NotNull [] args
+  ) throws IllegalArgumentException {
+    return List.of();
+  }
+
+}
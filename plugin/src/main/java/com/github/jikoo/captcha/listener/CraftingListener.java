@@ -7,15 +7,19 @@ import com.google.errorprone.annotations.Keep;
 import org.bukkit.Keyed;
 import org.bukkit.Material;
 import org.bukkit.block.Crafter;
+import org.bukkit.entity.HumanEntity;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.CrafterCraftEvent;
 import org.bukkit.event.inventory.CraftItemEvent;
 import org.bukkit.event.inventory.PrepareItemCraftEvent;
 import org.bukkit.event.player.PlayerRecipeDiscoverEvent;
 import org.bukkit.inventory.CraftingInventory;
+import org.bukkit.inventory.InventoryView;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
+import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -24,10 +28,16 @@ import java.util.function.Consumer;
 @SuppressWarnings("MultipleNullnessAnnotations") // False positive for non-null array with nullable elements.
 public class CraftingListener implements Listener {
 
+  private final @NotNull Plugin plugin;
   private final @NotNull ComponentLangManager lang;
   private final @NotNull CaptchaManager captchas;
 
-  public CraftingListener(@NotNull ComponentLangManager lang, @NotNull CaptchaManager captchas) {
+  public CraftingListener(
+      @NotNull Plugin plugin,
+      @NotNull ComponentLangManager lang,
+      @NotNull CaptchaManager captchas
+  ) {
+    this.plugin = plugin;
     this.lang = lang;
     this.captchas = captchas;
   }
@@ -46,7 +56,13 @@ public class CraftingListener implements Listener {
   private void onPrepareItemCraft(@NotNull PrepareItemCraftEvent event) {
     CraftingInventory inventory = event.getInventory();
     // Handle captchas in recipes and the uncaptcha crafting recipe.
-    onRecipeUse(event.getRecipe(), inventory.getMatrix(), inventory::setResult, () -> inventory.setResult(null));
+    onRecipeUse(
+        event.getRecipe(),
+        inventory.getMatrix(),
+        inventory::setResult,
+        () -> inventory.setResult(null),
+        card -> updateResultWhenLoaded(event.getView().getPlayer(), inventory, card)
+    );
   }
 
   @Keep
@@ -61,6 +77,11 @@ public class CraftingListener implements Listener {
         () -> {
           lang.sendComponent(event.getWhoClicked(), Messages.EVENT_CRAFT_DENIED);
           event.setCancelled(true);
+        },
+        card -> {
+          // Contents were evicted since the result was previewed. Deny until they are loaded again.
+          event.setCancelled(true);
+          updateResultWhenLoaded(event.getWhoClicked(), inventory, card);
         }
     );
   }
@@ -83,19 +104,99 @@ public class CraftingListener implements Listener {
         () -> {
           event.setResult(ItemStack.of(Material.AIR));
           event.setCancelled(true);
+        },
+        card -> {
+          // Crafters have no viewer to update. Load contents so that the next attempt succeeds.
+          event.setCancelled(true);
+          captchas.getItemByCaptchaAsync(card);
         }
     );
   }
 
+  @Keep
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  private void onCraftItemMonitor(@NotNull CraftItemEvent event) {
+    if (!isUncaptchaRecipe(event.getRecipe())) {
+      return;
+    }
+
+    ItemStack card = getFirstItem(event.getInventory().getMatrix());
+    String hash = CaptchaManager.getHashFromCaptcha(card);
+    if (card == null || hash == null || !event.isShiftClick()) {
+      // Every other click crafts once, consuming a single card.
+      recordOpen(hash, 1);
+      return;
+    }
+
+    // Shift-clicking crafts repeatedly until the grid is empty or the result no longer fits.
+    // Compare the cards held once the click is done. Cards are only moved between the grid, the
+    // inventory, and the cursor, so moves made in the meantime do not change the total.
+    HumanEntity viewer = event.getWhoClicked();
+    InventoryView view = event.getView();
+    int maxCrafted = card.getAmount();
+    int before = countCards(viewer, view, hash);
+    viewer.getScheduler().run(
+        plugin,
+        task -> {
+          int crafted = before - countCards(viewer, view, hash);
+          recordOpen(hash, Math.clamp(crafted, 1, maxCrafted));
+        },
+        // The viewer is gone. Only the first card is certain to be consumed, and releasing too few
+        // only delays collection.
+        () -> recordOpen(hash, 1)
+    );
+  }
+
+  @Keep
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  private void onCrafterCraftMonitor(@NotNull CrafterCraftEvent event) {
+    if (isUncaptchaRecipe(event.getRecipe()) && event.getBlock().getState(false) instanceof Crafter crafter) {
+      // Crafters always craft once, consuming a single card.
+      recordOpen(CaptchaManager.getHashFromCaptcha(getFirstItem(crafter.getInventory().getContents())), 1);
+    }
+  }
+
+  private void recordOpen(@Nullable String hash, int consumed) {
+    if (hash != null) {
+      captchas.release(hash, consumed);
+    }
+    captchas.getMetrics().recordOpen();
+  }
+
+  private static int countCards(@NotNull HumanEntity viewer, @NotNull InventoryView view, @NotNull String hash) {
+    int count = countCards(view.getTopInventory().getContents(), hash)
+        + countCards(view.getBottomInventory().getContents(), hash);
+    ItemStack cursor = viewer.getItemOnCursor();
+    if (hash.equals(CaptchaManager.getHashFromCaptcha(cursor))) {
+      count += cursor.getAmount();
+    }
+    return count;
+  }
+
+  private static int countCards(@Nullable ItemStack @NotNull [] contents, @NotNull String hash) {
+    int count = 0;
+    for (ItemStack itemStack : contents) {
+      if (itemStack != null && hash.equals(CaptchaManager.getHashFromCaptcha(itemStack))) {
+        count += itemStack.getAmount();
+      }
+    }
+    return count;
+  }
+
+  private static boolean isUncaptchaRecipe(@Nullable Recipe recipe) {
+    return recipe instanceof Keyed keyed && keyed.getKey().equals(CaptchaManager.KEY_UNCAPTCHA_RECIPE);
+  }
+
   private void onRecipeUse(
       @Nullable Recipe recipe,
       @Nullable ItemStack @NotNull [] matrix,
       @NotNull Consumer<@NotNull ItemStack> setResult,
-      @NotNull Runnable cancel
+      @NotNull Runnable cancel,
+      @NotNull Consumer<@NotNull ItemStack> onNotLoaded
   ) {
     // If this is the uncaptcha recipe, set result from input.
-    if (recipe instanceof Keyed keyed && keyed.getKey().equals(CaptchaManager.KEY_UNCAPTCHA_RECIPE)) {
-      setUncaptchaResult(matrix, setResult);
+    if (isUncaptchaRecipe(recipe)) {
+      setUncaptchaResult(matrix, setResult, onNotLoaded);
       return;
     }
 
@@ -111,20 +212,60 @@ public class CraftingListener implements Listener {
   // Helper for setting result from crafting matrix.
   private void setUncaptchaResult(
       @Nullable ItemStack @NotNull [] matrix,
-      @NotNull Consumer<@NotNull ItemStack> setResult
+      @NotNull Consumer<@NotNull ItemStack> setResult,
+      @NotNull Consumer<@NotNull ItemStack> onNotLoaded
+  ) {
+    ItemStack card = getFirstItem(matrix);
+    if (card == null) {
+      return;
+    }
+
+    String hash = CaptchaManager.getHashFromCaptcha(card);
+    if (hash == null) {
+      setResult.accept(ItemStack.of(Material.AIR));
+      return;
+    }
+
+    // Never wait on storage during a craft. If the contents are not in memory, show nothing for now.
+    ItemStack contained = captchas.getLoadedItemByHash(hash);
+    if (contained == null) {
+      setResult.accept(ItemStack.of(Material.AIR));
+      onNotLoaded.accept(card);
+    } else {
+      setResult.accept(contained);
+    }
+  }
+
+  private void updateResultWhenLoaded(
+      @NotNull HumanEntity viewer,
+      @NotNull CraftingInventory inventory,
+      @NotNull ItemStack card
   ) {
+    String hash = CaptchaManager.getHashFromCaptcha(card);
+    captchas.getItemByCaptchaAsync(card).thenAccept(contained -> viewer.getScheduler().run(
+        plugin,
+        task -> {
+          // Re-validate: the grid may have changed or been closed while the contents loaded.
+          if (contained == null
+              || !inventory.getViewers().contains(viewer)
+              || !isUncaptchaRecipe(inventory.getRecipe())
+              || hash == null
+              || !hash.equals(CaptchaManager.getHashFromCaptcha(getFirstItem(inventory.getMatrix())))) {
+            return;
+          }
+          inventory.setResult(contained);
+        },
+        null
+    ));
+  }
+
+  private static @Nullable ItemStack getFirstItem(@Nullable ItemStack @NotNull [] matrix) {
     for (ItemStack itemStack : matrix) {
-      if (itemStack == null || itemStack.getType() == Material.AIR) {
-        continue;
-      }
-      if (!CaptchaManager.isUsedCaptcha(itemStack)) {
-        setResult.accept(ItemStack.of(Material.AIR));
-      } else {
-        ItemStack contained = captchas.getItemByCaptcha(itemStack);
-        setResult.accept(contained == null ? ItemStack.of(Material.AIR) : contained);
+      if (itemStack != null && itemStack.getType() != Material.AIR) {
+        return itemStack;
       }
-      return;
     }
+    return null;
   }
 
 }
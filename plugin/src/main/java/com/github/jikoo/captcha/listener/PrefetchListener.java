@@ -0,0 +1,73 @@
+package com.github.jikoo.captcha.listener;
+
+import com.github.jikoo.captcha.CaptchaManager;
+import com.google.errorprone.annotations.Keep;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Container;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryOpenEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Warm the cache with the contents of cards that are likely to be used soon.
+ *
+ * <p>Scanning only reads card identifiers; all loading happens off-thread in
+ * {@link CaptchaManager#prefetch(String)}. Cards nested inside other items such as shulker boxes are
+ * not scanned, as finding them would require copying the containing item's meta.
+ */
+@SuppressWarnings("MultipleNullnessAnnotations") // False positive for non-null array with nullable elements.
+public class PrefetchListener implements Listener {
+
+  private final @NotNull CaptchaManager captchas;
+
+  public PrefetchListener(@NotNull CaptchaManager captchas) {
+    this.captchas = captchas;
+  }
+
+  @Keep
+  @EventHandler(priority = EventPriority.MONITOR)
+  private void onPlayerJoin(@NotNull PlayerJoinEvent event) {
+    Player player = event.getPlayer();
+    prefetch(player.getInventory().getContents());
+    prefetch(player.getEnderChest().getContents());
+  }
+
+  @Keep
+  @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+  private void onInventoryOpen(@NotNull InventoryOpenEvent event) {
+    prefetch(event.getInventory().getContents());
+  }
+
+  @Keep
+  @EventHandler(priority = EventPriority.MONITOR)
+  private void onChunkLoad(@NotNull ChunkLoadEvent event) {
+    // Newly generated chunks cannot contain cards.
+    if (event.isNewChunk()) {
+      return;
+    }
+
+    // Live states avoid copying every tile entity in the chunk.
+    for (BlockState state : event.getChunk().getTileEntities(false)) {
+      if (state instanceof Container container) {
+        prefetch(container.getInventory().getContents());
+      }
+    }
+  }
+
+  private void prefetch(@Nullable ItemStack @NotNull [] contents) {
+    for (ItemStack itemStack : contents) {
+      String hash = CaptchaManager.getHashFromCaptcha(itemStack);
+      if (hash != null) {
+        captchas.prefetch(hash);
+      }
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryView;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -26,10 +27,12 @@ import java.util.logging.Logger;
 
 public class UseListener implements Listener {
 
+  private final @NotNull Plugin plugin;
   private final @NotNull CaptchaManager captchas;
   private final @NotNull Logger logger;
 
-  public UseListener(@NotNull CaptchaManager captchas, @NotNull Logger logger) {
+  public UseListener(@NotNull Plugin plugin, @NotNull CaptchaManager captchas, @NotNull Logger logger) {
+    this.plugin = plugin;
     this.captchas = captchas;
     this.logger = logger;
   }
@@ -51,9 +54,10 @@ public class UseListener implements Listener {
     ItemStack blank = action.getBlank();
     ItemStack content = action.getContent();
 
-    if (captchas.canNotCaptcha(content)
-        || !CaptchaManager.isBlankCaptcha(blank)
-        || CaptchaManager.isBlankCaptcha(content)) {
+    // Check cheap card identity before inspecting the content's meta.
+    if (!CaptchaManager.isBlankCaptcha(blank)
+        || CaptchaManager.isBlankCaptcha(content)
+        || captchas.canNotCaptcha(content)) {
       return;
     }
 
@@ -74,6 +78,10 @@ public class UseListener implements Listener {
     }
 
     // Dropping item failed for hotbar/off-hand swap. Undo changes.
+    String hash = CaptchaManager.getHashFromCaptcha(captchaItem);
+    if (hash != null) {
+      captchas.release(hash, 1);
+    }
     blank.setAmount(blank.getAmount() + 1);
     action.setBlank(blank);
     action.setContent(content);
@@ -251,20 +259,50 @@ public class UseListener implements Listener {
     Player player = event.getPlayer();
     PlayerInventory inventory = player.getInventory();
     ItemStack held = inventory.getItem(hand);
-    if (!CaptchaManager.isUsedCaptcha(held) || BlockUtil.hasRightClickFunction(event)) {
+    String hash = CaptchaManager.getHashFromCaptcha(held);
+    if (hash == null || BlockUtil.hasRightClickFunction(event)) {
       return;
     }
 
-    ItemStack captchaStack = captchas.getItemByCaptcha(held);
+    ItemStack captchaStack = captchas.getLoadedItemByHash(hash);
+    if (captchaStack != null) {
+      openCaptcha(player, hand, hash, held, captchaStack);
+      return;
+    }
+
+    // Contents are not in memory. Load them off-thread and open the card once they are available.
+    captchas.getItemByCaptchaAsync(held).thenAccept(loaded -> player.getScheduler().run(
+        plugin,
+        task -> {
+          // The inventory may have changed while loading; only open if the same card is still held.
+          ItemStack current = player.getInventory().getItem(hand);
+          if (hash.equals(CaptchaManager.getHashFromCaptcha(current))) {
+            openCaptcha(player, hand, hash, current, loaded);
+          }
+        },
+        null
+    ));
+  }
+
+  private void openCaptcha(
+      @NotNull Player player,
+      @NotNull EquipmentSlot hand,
+      @NotNull String hash,
+      @NotNull ItemStack held,
+      @Nullable ItemStack captchaStack
+  ) {
     if (captchaStack == null || captchaStack.isSimilar(held)) {
-      String hash = CaptchaManager.getHashFromCaptcha(held);
-      logger.warning(() -> "Invalid captcha belonging to " + player.getName() + ": " + (hash == null ? held.toString() : hash));
+      logger.warning(() -> "Invalid captcha belonging to " + player.getName() + ": " + hash);
       return;
     }
 
+    PlayerInventory inventory = player.getInventory();
+
     if (decrementedHandIsEmpty(inventory, hand, held)) {
       // If this was the last captcha, place the contents directly in the same slot.
       inventory.setItem(hand, captchaStack);
+      captchas.release(hash, 1);
+      captchas.getMetrics().recordOpen();
       return;
     }
 
@@ -272,6 +310,8 @@ public class UseListener implements Listener {
     if (addOrDrop(player, contents, captchaStack)) {
       // Update inventory contents.
       inventory.setStorageContents(contents);
+      captchas.release(hash, 1);
+      captchas.getMetrics().recordOpen();
     } else {
       // If dropping excess was denied, cannot open. Undo hand modification.
       held.setAmount(held.getAmount() + 1);
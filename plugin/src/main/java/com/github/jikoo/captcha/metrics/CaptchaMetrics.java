@@ -0,0 +1,213 @@
+package com.github.jikoo.captcha.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operation counters and latencies for captchacard storage.
+ *
+ * <p>All counters are striped, so recording is cheap enough for the hot path.
+ */
+public class CaptchaMetrics {
+
+  private final LongAdder captures = new LongAdder();
+  private final LongAdder opens = new LongAdder();
+  private final LongAdder collisionProbes = new LongAdder();
+  private final LongAdder diskReadBytes = new LongAdder();
+  private final LongAdder diskWriteBytes = new LongAdder();
+  private final LongAdder prefetches = new LongAdder();
+  private final LongAdder prefetchesSkipped = new LongAdder();
+  private final LongAdder prefetchesDropped = new LongAdder();
+  private final LongAdder prefetchHits = new LongAdder();
+  private final LongAdder prefetchMisses = new LongAdder();
+  private final LongAdder coldHits = new LongAdder();
+  private final LatencyHistogram hashLatency = new LatencyHistogram();
+  private final LatencyHistogram diskReadLatency = new LatencyHistogram();
+  private final LatencyHistogram diskWriteLatency = new LatencyHistogram();
+  private final LatencyHistogram deserializeLatency = new LatencyHistogram();
+
+  /**
+   * Record an item being captured in a card.
+   */
+  public void recordCapture() {
+    captures.increment();
+  }
+
+  /**
+   * Record a card being opened.
+   */
+  public void recordOpen() {
+    opens.increment();
+  }
+
+  /**
+   * Record a hash candidate being rejected due to a collision.
+   */
+  public void recordCollisionProbe() {
+    collisionProbes.increment();
+  }
+
+  /**
+   * Record the time taken to calculate a hash, including collision checks.
+   *
+   * @param nanos the duration in nanoseconds
+   */
+  public void recordHash(long nanos) {
+    hashLatency.record(nanos);
+  }
+
+  /**
+   * Record a read from storage.
+   *
+   * @param bytes the number of bytes read
+   * @param nanos the duration in nanoseconds
+   */
+  public void recordDiskRead(int bytes, long nanos) {
+    diskReadBytes.add(bytes);
+    diskReadLatency.record(nanos);
+  }
+
+  /**
+   * Record a write to storage.
+   *
+   * @param bytes the number of bytes written
+   * @param nanos the duration in nanoseconds
+   */
+  public void recordDiskWrite(int bytes, long nanos) {
+    diskWriteBytes.add(bytes);
+    diskWriteLatency.record(nanos);
+  }
+
+  /**
+   * Record the time taken to deserialize an item.
+   *
+   * @param nanos the duration in nanoseconds
+   */
+  public void recordDeserialize(long nanos) {
+    deserializeLatency.record(nanos);
+  }
+
+  /**
+   * Record a prefetch being started.
+   */
+  public void recordPrefetch() {
+    prefetches.increment();
+  }
+
+  /**
+   * Record a prefetch being skipped because the item is already loaded or recently prefetched.
+   */
+  public void recordPrefetchSkipped() {
+    prefetchesSkipped.increment();
+  }
+
+  /**
+   * Record a prefetch being dropped due to the rate limit.
+   */
+  public void recordPrefetchDropped() {
+    prefetchesDropped.increment();
+  }
+
+  /**
+   * Record the first lookup of a prefetched item.
+   *
+   * @param loaded true if the item was loaded by the time it was looked up
+   */
+  public void recordPrefetchLookup(boolean loaded) {
+    if (loaded) {
+      prefetchHits.increment();
+    } else {
+      prefetchMisses.increment();
+    }
+  }
+
+  /**
+   * Record a read served from the archive rather than live storage.
+   */
+  public void recordColdHit() {
+    coldHits.increment();
+  }
+
+  public long getCaptures() {
+    return captures.sum();
+  }
+
+  public long getOpens() {
+    return opens.sum();
+  }
+
+  public long getCollisionProbes() {
+    return collisionProbes.sum();
+  }
+
+  public long getDiskReadBytes() {
+    return diskReadBytes.sum();
+  }
+
+  public long getDiskWriteBytes() {
+    return diskWriteBytes.sum();
+  }
+
+  public long getPrefetches() {
+    return prefetches.sum();
+  }
+
+  public long getPrefetchesSkipped() {
+    return prefetchesSkipped.sum();
+  }
+
+  public long getPrefetchesDropped() {
+    return prefetchesDropped.sum();
+  }
+
+  public long getPrefetchHits() {
+    return prefetchHits.sum();
+  }
+
+  public long getPrefetchMisses() {
+    return prefetchMisses.sum();
+  }
+
+  /**
+   * Get the fraction of prefetched items that were loaded by the time they were first looked up.
+   *
+   * @return the prefetch hit rate or 0 if no prefetched items have been looked up
+   */
+  public double getPrefetchHitRate() {
+    long hits = getPrefetchHits();
+    long lookups = hits + getPrefetchMisses();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  public long getColdHits() {
+    return coldHits.sum();
+  }
+
+  /**
+   * Get the fraction of storage reads that were served from the archive.
+   *
+   * @return the cold hit rate or 0 if nothing has been read from storage
+   */
+  public double getColdHitRate() {
+    long reads = diskReadLatency.getCount();
+    return reads == 0 ? 0 : (double) getColdHits() / reads;
+  }
+
+  public @NotNull LatencyHistogram getHashLatency() {
+    return hashLatency;
+  }
+
+  public @NotNull LatencyHistogram getDiskReadLatency() {
+    return diskReadLatency;
+  }
+
+  public @NotNull LatencyHistogram getDiskWriteLatency() {
+    return diskWriteLatency;
+  }
+
+  public @NotNull LatencyHistogram getDeserializeLatency() {
+    return deserializeLatency;
+  }
+
+}
@@ -0,0 +1,218 @@
+package com.github.jikoo.captcha.metrics;
+
+import com.github.jikoo.captcha.CaptchaManager;
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exposes {@link CaptchaMetrics} and cache statistics of a {@link CaptchaManager} over JMX.
+ */
+public class CaptchaMetricsBean implements CaptchaMetricsMXBean {
+
+  private static final String OBJECT_NAME = "com.github.jikoo.captcha:type=Metrics";
+
+  private final @NotNull CaptchaManager manager;
+  private final @NotNull CaptchaMetrics metrics;
+
+  public CaptchaMetricsBean(@NotNull CaptchaManager manager) {
+    this.manager = manager;
+    this.metrics = manager.getMetrics();
+  }
+
+  /**
+   * Register the bean with the platform MBean server, replacing any previous registration.
+   *
+   * @throws JMException if the bean cannot be registered
+   */
+  public void register() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(this, name);
+  }
+
+  /**
+   * Unregister the bean from the platform MBean server.
+   *
+   * @throws JMException if the bean cannot be unregistered
+   */
+  public static void unregister() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Override
+  public long getCaptures() {
+    return metrics.getCaptures();
+  }
+
+  @Override
+  public long getOpens() {
+    return metrics.getOpens();
+  }
+
+  @Override
+  public long getCollisionProbes() {
+    return metrics.getCollisionProbes();
+  }
+
+  @Override
+  public long getPendingWrites() {
+    return manager.getPendingWrites();
+  }
+
+  @Override
+  public long getPrefetches() {
+    return metrics.getPrefetches();
+  }
+
+  @Override
+  public long getPrefetchesSkipped() {
+    return metrics.getPrefetchesSkipped();
+  }
+
+  @Override
+  public long getPrefetchesDropped() {
+    return metrics.getPrefetchesDropped();
+  }
+
+  @Override
+  public long getPrefetchHits() {
+    return metrics.getPrefetchHits();
+  }
+
+  @Override
+  public long getPrefetchMisses() {
+    return metrics.getPrefetchMisses();
+  }
+
+  @Override
+  public double getPrefetchHitRate() {
+    return metrics.getPrefetchHitRate();
+  }
+
+  @Override
+  public long getArchivedRecords() {
+    return manager.getArchivedCount();
+  }
+
+  @Override
+  public long getColdHits() {
+    return metrics.getColdHits();
+  }
+
+  @Override
+  public double getColdHitRate() {
+    return metrics.getColdHitRate();
+  }
+
+  @Override
+  public long getDecodedCacheHits() {
+    return manager.getDecodedCacheStats().hitCount();
+  }
+
+  @Override
+  public long getDecodedCacheMisses() {
+    return manager.getDecodedCacheStats().missCount();
+  }
+
+  @Override
+  public long getDecodedCacheEvictions() {
+    return manager.getDecodedCacheStats().evictionCount();
+  }
+
+  @Override
+  public double getDecodedCacheHitRate() {
+    return manager.getDecodedCacheStats().hitRate();
+  }
+
+  @Override
+  public long getSerializedCacheHits() {
+    return manager.getSerializedCacheStats().hitCount();
+  }
+
+  @Override
+  public long getSerializedCacheMisses() {
+    return manager.getSerializedCacheStats().missCount();
+  }
+
+  @Override
+  public long getSerializedCacheEvictions() {
+    return manager.getSerializedCacheStats().evictionCount();
+  }
+
+  @Override
+  public double getSerializedCacheHitRate() {
+    return manager.getSerializedCacheStats().hitRate();
+  }
+
+  @Override
+  public long getDiskReadBytes() {
+    return metrics.getDiskReadBytes();
+  }
+
+  @Override
+  public long getDiskReadCount() {
+    return metrics.getDiskReadLatency().getCount();
+  }
+
+  @Override
+  public double getDiskReadMeanMillis() {
+    return metrics.getDiskReadLatency().getMeanMillis();
+  }
+
+  @Override
+  public double getDiskReadP99Millis() {
+    return metrics.getDiskReadLatency().getPercentileMillis(0.99);
+  }
+
+  @Override
+  public long getDiskWriteBytes() {
+    return metrics.getDiskWriteBytes();
+  }
+
+  @Override
+  public long getDiskWriteCount() {
+    return metrics.getDiskWriteLatency().getCount();
+  }
+
+  @Override
+  public double getDiskWriteMeanMillis() {
+    return metrics.getDiskWriteLatency().getMeanMillis();
+  }
+
+  @Override
+  public double getDiskWriteP99Millis() {
+    return metrics.getDiskWriteLatency().getPercentileMillis(0.99);
+  }
+
+  @Override
+  public double getHashMeanMillis() {
+    return metrics.getHashLatency().getMeanMillis();
+  }
+
+  @Override
+  public double getHashP99Millis() {
+    return metrics.getHashLatency().getPercentileMillis(0.99);
+  }
+
+  @Override
+  public double getDeserializeMeanMillis() {
+    return metrics.getDeserializeLatency().getMeanMillis();
+  }
+
+  @Override
+  public double getDeserializeP99Millis() {
+    return metrics.getDeserializeLatency().getPercentileMillis(0.99);
+  }
+
+}
@@ -0,0 +1,74 @@
+package com.github.jikoo.captcha.metrics;
+
+/**
+ * JMX view of captchacard storage metrics.
+ */
+public interface CaptchaMetricsMXBean {
+
+  long getCaptures();
+
+  long getOpens();
+
+  long getCollisionProbes();
+
+  long getPendingWrites();
+
+  long getPrefetches();
+
+  long getPrefetchesSkipped();
+
+  long getPrefetchesDropped();
+
+  long getPrefetchHits();
+
+  long getPrefetchMisses();
+
+  double getPrefetchHitRate();
+
+  long getArchivedRecords();
+
+  long getColdHits();
+
+  double getColdHitRate();
+
+  long getDecodedCacheHits();
+
+  long getDecodedCacheMisses();
+
+  long getDecodedCacheEvictions();
+
+  double getDecodedCacheHitRate();
+
+  long getSerializedCacheHits();
+
+  long getSerializedCacheMisses();
+
+  long getSerializedCacheEvictions();
+
+  double getSerializedCacheHitRate();
+
+  long getDiskReadBytes();
+
+  long getDiskReadCount();
+
+  double getDiskReadMeanMillis();
+
+  double getDiskReadP99Millis();
+
+  long getDiskWriteBytes();
+
+  long getDiskWriteCount();
+
+  double getDiskWriteMeanMillis();
+
+  double getDiskWriteP99Millis();
+
+  double getHashMeanMillis();
+
+  double getHashP99Millis();
+
+  double getDeserializeMeanMillis();
+
+  double getDeserializeP99Millis();
+
+}
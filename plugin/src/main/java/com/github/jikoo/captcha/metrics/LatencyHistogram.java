@@ -0,0 +1,98 @@
+package com.github.jikoo.captcha.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A low-overhead latency histogram with power of two nanosecond buckets.
+ *
+ * <p>Buckets are striped counters, so recording from many threads does not contend. Percentiles are
+ * reported as the upper bound of the bucket containing them, which overestimates by at most 2x.
+ */
+public class LatencyHistogram {
+
+  // 2^40 nanoseconds is over 18 minutes; anything larger is clamped to the final bucket.
+  private static final int BUCKETS = 41;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder totalNanos = new LongAdder();
+
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; ++i) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Record a duration.
+   *
+   * @param nanos the duration in nanoseconds
+   */
+  public void record(long nanos) {
+    int bucket = nanos <= 0 ? 0 : Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(nanos));
+    buckets[bucket].increment();
+    totalNanos.add(Math.max(0, nanos));
+  }
+
+  /**
+   * Get the number of recorded durations.
+   *
+   * @return the number of durations
+   */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Get the total of all recorded durations in milliseconds.
+   *
+   * @return the total duration
+   */
+  public double getTotalMillis() {
+    return totalNanos.sum() / 1_000_000.0;
+  }
+
+  /**
+   * Get the mean recorded duration in milliseconds.
+   *
+   * @return the mean duration or 0 if nothing has been recorded
+   */
+  public double getMeanMillis() {
+    long count = getCount();
+    return count == 0 ? 0 : getTotalMillis() / count;
+  }
+
+  /**
+   * Get an approximate percentile of recorded durations in milliseconds.
+   *
+   * @param percentile the percentile, from 0 to 1
+   * @return the approximate duration or 0 if nothing has been recorded
+   */
+  public double getPercentileMillis(double percentile) {
+    long[] counts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      counts[i] = buckets[i].sum();
+      count += counts[i];
+    }
+
+    if (count == 0) {
+      return 0;
+    }
+
+    long target = Math.max(1, (long) Math.ceil(percentile * count));
+    long cumulative = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      cumulative += counts[i];
+      if (cumulative >= target) {
+        return (1L << i) / 1_000_000.0;
+      }
+    }
+
+    return (1L << (BUCKETS - 1)) / 1_000_000.0;
+  }
+
+}
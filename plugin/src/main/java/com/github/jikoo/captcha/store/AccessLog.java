@@ -0,0 +1,213 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Coarse last-access days of records, used to find records that have not been read in a long time.
+ *
+ * <p>Access is tracked per day rather than per read. A hash is only logged the first time it is
+ * read each day, and logged hashes are appended to the day's file in batches. Only hashes read
+ * within the retention period are held in memory, so the cost scales with the hot set rather than
+ * the size of the store.
+ */
+public final class AccessLog {
+
+  private static final String SINCE = "since";
+  private static final String EXTENSION = ".log";
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private final @NotNull Path directory;
+  private final int retentionDays;
+  private final @NotNull Logger logger;
+  private final @NotNull Map<String, Integer> lastAccess = new ConcurrentHashMap<>();
+  private final @NotNull Set<String> pending = ConcurrentHashMap.newKeySet();
+  private int trackedSince;
+  private int prunedDay;
+
+  /**
+   * Create a new access log.
+   *
+   * @param directory the directory to keep the log in
+   * @param retentionDays the number of days of access to retain
+   * @param logger the logger used to report problems
+   */
+  public AccessLog(@NotNull Path directory, int retentionDays, @NotNull Logger logger) {
+    this.directory = directory;
+    this.retentionDays = retentionDays;
+    this.logger = logger;
+  }
+
+  /**
+   * Get the current day.
+   *
+   * @return the number of days since the epoch
+   */
+  public static int today() {
+    return (int) Math.floorDiv(System.currentTimeMillis(), DAY_MILLIS);
+  }
+
+  /**
+   * Load access within the retention period and discard older days.
+   *
+   * @throws IOException if the log cannot be read
+   */
+  public synchronized void load() throws IOException {
+    Files.createDirectories(directory);
+    int today = today();
+    Path since = directory.resolve(SINCE);
+    try {
+      trackedSince = Integer.parseInt(Files.readString(since, StandardCharsets.UTF_8).strip());
+    } catch (NoSuchFileException | NumberFormatException e) {
+      // Nothing is known about earlier access, so tracking starts now.
+      trackedSince = today;
+      Files.writeString(since, String.valueOf(today), StandardCharsets.UTF_8);
+    }
+
+    int cutoff = today - retentionDays;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        int day;
+        try {
+          day = Integer.parseInt(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        if (day < cutoff) {
+          Files.delete(path);
+        } else {
+          readDay(path, day);
+        }
+      }
+    }
+    prunedDay = today;
+  }
+
+  private void readDay(@NotNull Path path, int day) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      while (true) {
+        lastAccess.merge(in.readUTF(), day, Math::max);
+      }
+    } catch (EOFException | UTFDataFormatException e) {
+      // End of log. A torn trailing entry only loses a single day of access.
+    }
+  }
+
+  /**
+   * Record a hash being read.
+   *
+   * @param hash the hash
+   */
+  public void record(@NotNull String hash) {
+    int today = today();
+    // Only the first read of the day is logged; the rest cost a single map lookup.
+    Integer last = lastAccess.get(hash);
+    if (last != null && last == today) {
+      return;
+    }
+    Integer previous = lastAccess.put(hash, today);
+    // Another thread may have logged the same read in the meantime.
+    if (previous == null || previous != today) {
+      pending.add(hash);
+    }
+  }
+
+  /**
+   * Check if a hash has been read since a day.
+   *
+   * @param hash the hash
+   * @param day the number of days since the epoch
+   * @return true if the hash was read on or after the day
+   */
+  public boolean isAccessedSince(@NotNull String hash, int day) {
+    Integer last = lastAccess.get(hash);
+    return last != null && last >= day;
+  }
+
+  /**
+   * Check if access has been tracked since a day. Before then, records may have been read without
+   * being logged.
+   *
+   * @param day the number of days since the epoch
+   * @return true if tracking covers the day
+   */
+  public synchronized boolean isTrackedSince(int day) {
+    return trackedSince <= day;
+  }
+
+  /**
+   * Append hashes read since the last flush to the log and discard expired days.
+   *
+   * @throws IOException if the log cannot be written
+   */
+  public synchronized void flush() throws IOException {
+    int today = today();
+    if (prunedDay != today) {
+      prune(today - retentionDays);
+      prunedDay = today;
+    }
+
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    List<String> batch = new ArrayList<>(pending.size());
+    for (Iterator<String> iterator = pending.iterator(); iterator.hasNext(); ) {
+      batch.add(iterator.next());
+      iterator.remove();
+    }
+
+    Path file = directory.resolve(today + EXTENSION);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+        file,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND)))) {
+      for (String hash : batch) {
+        out.writeUTF(hash);
+      }
+    }
+  }
+
+  private void prune(int cutoff) {
+    lastAccess.values().removeIf(day -> day < cutoff);
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        try {
+          if (Integer.parseInt(name.substring(0, name.length() - EXTENSION.length())) < cutoff) {
+            Files.delete(path);
+          }
+        } catch (NumberFormatException e) {
+          // Not a day file.
+        }
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to discard expired card access logs", e);
+    }
+  }
+
+}
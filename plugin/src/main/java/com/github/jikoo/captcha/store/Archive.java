@@ -0,0 +1,209 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Read-only storage for records that have not been read in a long time, held in compressed packs
+ * apart from the live store.
+ *
+ * <p>Packs are never modified. A record may appear in several packs or in both a pack and the live
+ * store if it was read again after archival and later went cold a second time; every copy holds
+ * the same contents, and the live store always takes precedence.
+ */
+public final class Archive {
+
+  private static final String PREFIX = "pack-";
+  private static final String EXTENSION = ".cpk";
+
+  private final @NotNull Path directory;
+  private final @NotNull Logger logger;
+  private final @NotNull List<ArchivePack> packs = new CopyOnWriteArrayList<>();
+  private int nextPack = 1;
+
+  /**
+   * Create a new archive.
+   *
+   * @param directory the directory holding the packs
+   * @param logger the logger used to report problems
+   */
+  public Archive(@NotNull Path directory, @NotNull Logger logger) {
+    this.directory = directory;
+    this.logger = logger;
+  }
+
+  /**
+   * Open all existing packs.
+   *
+   * @throws IOException if a pack cannot be read
+   */
+  public synchronized void open() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + EXTENSION)) {
+      for (Path path : stream) {
+        files.add(path);
+      }
+    }
+
+    // Newest first, as recently archived records are the likeliest to be read again.
+    files.sort((first, second) -> Integer.compare(getNumber(second), getNumber(first)));
+    for (Path file : files) {
+      packs.add(ArchivePack.open(file));
+      nextPack = Math.max(nextPack, getNumber(file) + 1);
+    }
+  }
+
+  /**
+   * Delete packs that were interrupted while being written. Their records were never removed from
+   * the live store. Must not be called while another process may be writing to the archive.
+   *
+   * @throws IOException if a file cannot be deleted
+   */
+  public synchronized void deleteIncomplete() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + EXTENSION + ".tmp")) {
+      for (Path path : stream) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static int getNumber(@NotNull Path file) {
+    String name = file.getFileName().toString();
+    try {
+      return Integer.parseInt(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Check if the archive holds no packs.
+   *
+   * @return true if nothing is archived
+   */
+  public boolean isEmpty() {
+    return packs.isEmpty();
+  }
+
+  /**
+   * Get the number of packs.
+   *
+   * @return the number of packs
+   */
+  public int getPackCount() {
+    return packs.size();
+  }
+
+  /**
+   * Get the number of archived records, including records archived more than once.
+   *
+   * @return the number of records
+   */
+  public long size() {
+    long size = 0;
+    for (ArchivePack pack : packs) {
+      size += pack.size();
+    }
+    return size;
+  }
+
+  /**
+   * Get all archived hashes.
+   *
+   * @return the archived hashes
+   */
+  public @NotNull Set<String> keys() {
+    Set<String> keys = new HashSet<>();
+    for (ArchivePack pack : packs) {
+      keys.addAll(pack.keys());
+    }
+    return keys;
+  }
+
+  /**
+   * Check if a record is archived.
+   *
+   * @param hash the hash of the record
+   * @return true if the record is archived
+   */
+  public boolean contains(@NotNull String hash) {
+    for (ArchivePack pack : packs) {
+      if (pack.contains(hash)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Read an archived record.
+   *
+   * @param hash the hash of the record
+   * @return the record data or {@code null} if the record is not archived
+   * @throws IOException if the record cannot be read
+   */
+  public byte @Nullable [] get(@NotNull String hash) throws IOException {
+    for (ArchivePack pack : packs) {
+      byte[] data = pack.get(hash);
+      if (data != null) {
+        return data;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Begin writing a new pack. Once finished, the pack must be {@link #add(ArchivePack) added}.
+   *
+   * @return the pack writer
+   * @throws IOException if the pack cannot be created
+   */
+  public synchronized @NotNull ArchivePack.Writer createPack() throws IOException {
+    Files.createDirectories(directory);
+    return new ArchivePack.Writer(directory.resolve(PREFIX + nextPack++ + EXTENSION));
+  }
+
+  /**
+   * Add a finished pack.
+   *
+   * @param pack the pack
+   */
+  public void add(@NotNull ArchivePack pack) {
+    packs.addFirst(pack);
+  }
+
+  /**
+   * Close all packs.
+   */
+  public synchronized void close() {
+    for (ArchivePack pack : packs) {
+      try {
+        pack.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Error closing archive pack " + pack.getFile(), e);
+      }
+    }
+    packs.clear();
+  }
+
+}
@@ -0,0 +1,426 @@
+package com.github.jikoo.captcha.store;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A read-only pack of records that have not been read in a long time.
+ *
+ * <p>Records are sorted by hash and concatenated into blocks, each compressed as a single zstd
+ * frame so that similar neighbouring records compress together. The index is memory-mapped and
+ * searched in place, so nothing per record is held on the heap.
+ * <pre>
+ *   int    magic
+ *   int    version
+ *   [blocks]
+ *   index:
+ *     int    record count
+ *     int[]  entry positions, relative to the first entry
+ *     [entries: byte hash length, byte[] UTF-8 hash, int block, int offset in block, int length]
+ *   block table:
+ *     int    block count
+ *     [blocks: long position, int compressed length, int length]
+ *   long   index position
+ *   long   block table position
+ *   int    magic
+ * </pre>
+ */
+public final class ArchivePack implements Closeable {
+
+  private static final int MAGIC = 0x43415243;
+  private static final int VERSION = 1;
+  private static final int FOOTER_SIZE = Long.BYTES * 2 + Integer.BYTES;
+  private static final int BLOCK_SIZE = 64 * 1024;
+  // Packs are written once and rarely read, so they are worth more effort than live records.
+  private static final int LEVEL = 12;
+  /** The maximum total size of records in a pack, keeping the file within a single mapping. */
+  public static final long MAX_BYTES = 1024L * 1024L * 1024L;
+  /** The order records must be added to a pack in. */
+  public static final @NotNull Comparator<String> HASH_ORDER = (first, second) -> Arrays.compareUnsigned(
+      first.getBytes(StandardCharsets.UTF_8),
+      second.getBytes(StandardCharsets.UTF_8));
+
+  private final @NotNull Path file;
+  private final @NotNull FileChannel channel;
+  private final @NotNull MappedByteBuffer buffer;
+  private final int count;
+  private final int positions;
+  private final int entries;
+  private final long @NotNull [] blockPositions;
+  private final int @NotNull [] blockCompressed;
+  private final int @NotNull [] blockLengths;
+
+  private ArchivePack(@NotNull Path file) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size < Integer.BYTES * 2 + FOOTER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException("Invalid archive pack size " + size);
+      }
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt(0) != MAGIC || buffer.getInt((int) size - Integer.BYTES) != MAGIC) {
+        throw new IOException("Not an archive pack");
+      }
+      if (buffer.getInt(Integer.BYTES) != VERSION) {
+        throw new IOException("Unsupported archive pack version " + buffer.getInt(Integer.BYTES));
+      }
+
+      int footer = (int) size - FOOTER_SIZE;
+      int index = Math.toIntExact(buffer.getLong(footer));
+      int table = Math.toIntExact(buffer.getLong(footer + Long.BYTES));
+      this.count = buffer.getInt(index);
+      this.positions = index + Integer.BYTES;
+      this.entries = positions + count * Integer.BYTES;
+
+      int blocks = buffer.getInt(table);
+      this.blockPositions = new long[blocks];
+      this.blockCompressed = new int[blocks];
+      this.blockLengths = new int[blocks];
+      int position = table + Integer.BYTES;
+      for (int i = 0; i < blocks; ++i) {
+        blockPositions[i] = buffer.getLong(position);
+        blockCompressed[i] = buffer.getInt(position + Long.BYTES);
+        blockLengths[i] = buffer.getInt(position + Long.BYTES + Integer.BYTES);
+        position += Long.BYTES + Integer.BYTES * 2;
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e instanceof IOException io ? io : new IOException("Malformed archive pack " + file, e);
+    }
+  }
+
+  /**
+   * Open an existing pack.
+   *
+   * @param file the pack file
+   * @return the pack
+   * @throws IOException if the pack cannot be read
+   */
+  public static @NotNull ArchivePack open(@NotNull Path file) throws IOException {
+    return new ArchivePack(file);
+  }
+
+  /**
+   * Get the pack file.
+   *
+   * @return the file
+   */
+  public @NotNull Path getFile() {
+    return file;
+  }
+
+  /**
+   * Get the number of records in the pack.
+   *
+   * @return the number of records
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Check if the pack contains a record.
+   *
+   * @param hash the hash of the record
+   * @return true if the record is in the pack
+   */
+  public boolean contains(@NotNull String hash) {
+    return find(hash.getBytes(StandardCharsets.UTF_8)) >= 0;
+  }
+
+  /**
+   * Read a record.
+   *
+   * @param hash the hash of the record
+   * @return the record data or {@code null} if the record is not in the pack
+   * @throws IOException if the record cannot be read
+   */
+  public byte @Nullable [] get(@NotNull String hash) throws IOException {
+    int entry = find(hash.getBytes(StandardCharsets.UTF_8));
+    if (entry < 0) {
+      return null;
+    }
+    int data = entry + 1 + Byte.toUnsignedInt(buffer.get(entry));
+    byte[] block = readBlock(buffer.getInt(data));
+    int offset = buffer.getInt(data + Integer.BYTES);
+    return Arrays.copyOfRange(block, offset, offset + buffer.getInt(data + Integer.BYTES * 2));
+  }
+
+  /**
+   * Get all hashes in the pack, in order.
+   *
+   * @return the hashes
+   */
+  public @NotNull List<String> keys() {
+    List<String> keys = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      keys.add(getHash(getEntry(i)));
+    }
+    return keys;
+  }
+
+  /**
+   * Read every record in the pack in order, decompressing each block once.
+   *
+   * @param consumer the consumer of each record
+   * @throws IOException if a record cannot be read
+   */
+  public void forEach(@NotNull RecordConsumer consumer) throws IOException {
+    int loadedBlock = -1;
+    byte[] block = null;
+    for (int i = 0; i < count; ++i) {
+      int entry = getEntry(i);
+      int data = entry + 1 + Byte.toUnsignedInt(buffer.get(entry));
+      int blockIndex = buffer.getInt(data);
+      if (blockIndex != loadedBlock) {
+        block = readBlock(blockIndex);
+        loadedBlock = blockIndex;
+      }
+      int offset = buffer.getInt(data + Integer.BYTES);
+      int length = buffer.getInt(data + Integer.BYTES * 2);
+      consumer.accept(getHash(entry), Arrays.copyOfRange(block, offset, offset + length));
+    }
+  }
+
+  private int getEntry(int index) {
+    return entries + buffer.getInt(positions + index * Integer.BYTES);
+  }
+
+  private @NotNull String getHash(int entry) {
+    byte[] hash = new byte[Byte.toUnsignedInt(buffer.get(entry))];
+    buffer.get(entry + 1, hash);
+    return new String(hash, StandardCharsets.UTF_8);
+  }
+
+  private int find(byte @NotNull [] hash) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int entry = getEntry(mid);
+      int comparison = compare(entry, hash);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return entry;
+      }
+    }
+    return -1;
+  }
+
+  private int compare(int entry, byte @NotNull [] hash) {
+    int length = Byte.toUnsignedInt(buffer.get(entry));
+    int shared = Math.min(length, hash.length);
+    for (int i = 0; i < shared; ++i) {
+      int comparison = Byte.compareUnsigned(buffer.get(entry + 1 + i), hash[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return Integer.compare(length, hash.length);
+  }
+
+  private byte @NotNull [] readBlock(int index) throws IOException {
+    byte[] compressed = new byte[blockCompressed[index]];
+    buffer.get((int) blockPositions[index], compressed);
+    try {
+      return Zstd.decompress(compressed, blockLengths[index]);
+    } catch (ZstdException e) {
+      throw new IOException("Unable to decompress block " + index + " of " + file, e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * A consumer of records read from a pack.
+   */
+  @FunctionalInterface
+  public interface RecordConsumer {
+
+    /**
+     * Accept a record.
+     *
+     * @param hash the hash of the record
+     * @param data the record data
+     * @throws IOException if the record cannot be handled
+     */
+    void accept(@NotNull String hash, byte @NotNull [] data) throws IOException;
+
+  }
+
+  /**
+   * Builds a new pack from records added in ascending order of hash. The pack is written to a
+   * temporary file and only moved into place once complete.
+   */
+  public static final class Writer implements Closeable {
+
+    private final @NotNull Path file;
+    private final @NotNull Path temp;
+    private final @NotNull FileChannel channel;
+    private final @NotNull ByteArrayOutputStream pendingBlock = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+    private final @NotNull ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+    private final @NotNull DataOutputStream entryOut = new DataOutputStream(entryBytes);
+    private final @NotNull ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+    private final @NotNull DataOutputStream tableOut = new DataOutputStream(tableBytes);
+    private int[] entryPositions = new int[1024];
+    private int count;
+    private int blocks;
+    private long bytes;
+    private byte @Nullable [] lastHash;
+    private boolean finished;
+
+    /**
+     * Begin writing a pack.
+     *
+     * @param file the file the complete pack is moved to
+     * @throws IOException if the temporary file cannot be created
+     */
+    public Writer(@NotNull Path file) throws IOException {
+      this.file = file;
+      this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+      this.channel = FileChannel.open(
+          temp,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING,
+          StandardOpenOption.WRITE);
+      writeFully(ByteBuffer.allocate(Integer.BYTES * 2).putInt(MAGIC).putInt(VERSION).flip());
+    }
+
+    /**
+     * Get the total size of records added so far.
+     *
+     * @return the size in bytes
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Add a record. Records must be added in ascending order of hash.
+     *
+     * @param hash the hash of the record
+     * @param data the record data
+     * @throws IOException if the pack cannot be written
+     * @throws IllegalArgumentException if the hash is out of order or too long
+     * @throws IllegalStateException if the pack would exceed {@link #MAX_BYTES}
+     */
+    public void add(@NotNull String hash, byte @NotNull [] data) throws IOException {
+      byte[] hashBytes = hash.getBytes(StandardCharsets.UTF_8);
+      if (hashBytes.length == 0 || hashBytes.length > 255) {
+        throw new IllegalArgumentException("Invalid hash length for " + hash);
+      }
+      if (lastHash != null && Arrays.compareUnsigned(lastHash, hashBytes) >= 0) {
+        throw new IllegalArgumentException("Hash out of order: " + hash);
+      }
+      if (bytes + data.length > MAX_BYTES) {
+        throw new IllegalStateException("Pack is full");
+      }
+      lastHash = hashBytes;
+
+      if (pendingBlock.size() > 0 && pendingBlock.size() + data.length > BLOCK_SIZE) {
+        flushBlock();
+      }
+
+      if (count == entryPositions.length) {
+        entryPositions = Arrays.copyOf(entryPositions, count * 2);
+      }
+      entryPositions[count++] = entryBytes.size();
+      entryOut.writeByte(hashBytes.length);
+      entryOut.write(hashBytes);
+      entryOut.writeInt(blocks);
+      entryOut.writeInt(pendingBlock.size());
+      entryOut.writeInt(data.length);
+
+      pendingBlock.write(data);
+      bytes += data.length;
+    }
+
+    private void flushBlock() throws IOException {
+      byte[] compressed;
+      try {
+        compressed = Zstd.compress(pendingBlock.toByteArray(), LEVEL);
+      } catch (ZstdException e) {
+        throw new IOException("Unable to compress archive block", e);
+      }
+      tableOut.writeLong(channel.position());
+      tableOut.writeInt(compressed.length);
+      tableOut.writeInt(pendingBlock.size());
+      writeFully(ByteBuffer.wrap(compressed));
+      pendingBlock.reset();
+      ++blocks;
+    }
+
+    private void writeFully(@NotNull ByteBuffer data) throws IOException {
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    }
+
+    /**
+     * Complete the pack, make it durable, and open it.
+     *
+     * @return the complete pack
+     * @throws IOException if the pack cannot be written
+     */
+    public @NotNull ArchivePack finish() throws IOException {
+      if (pendingBlock.size() > 0) {
+        flushBlock();
+      }
+
+      long index = channel.position();
+      ByteBuffer positions = ByteBuffer.allocate(Integer.BYTES * (count + 1)).putInt(count);
+      for (int i = 0; i < count; ++i) {
+        positions.putInt(entryPositions[i]);
+      }
+      writeFully(positions.flip());
+      writeFully(ByteBuffer.wrap(entryBytes.toByteArray()));
+
+      long table = channel.position();
+      writeFully(ByteBuffer.allocate(Integer.BYTES).putInt(blocks).flip());
+      writeFully(ByteBuffer.wrap(tableBytes.toByteArray()));
+      writeFully(ByteBuffer.allocate(FOOTER_SIZE).putLong(index).putLong(table).putInt(MAGIC).flip());
+
+      channel.force(true);
+      channel.close();
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+      finished = true;
+      return open(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!finished) {
+        channel.close();
+        Files.deleteIfExists(temp);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,321 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The stored form of a captchacard's contents.
+ *
+ * <p>Records written before this format are the raw serialized item. Serialized items are always
+ * GZIP data, so they can be distinguished from the current format by the leading magic byte.
+ * <pre>
+ *   byte   magic
+ *   byte   version
+ *   byte   flags
+ *   int    data version of the serialized item, 0 if unknown (version 2 onward)
+ *   [chain summary, if flagged]
+ *   [int   compression dictionary id, if flagged (version 3 onward)]
+ *   [int   uncompressed item length, if flagged (version 3 onward)]
+ *   int    item length
+ *   byte[] serialized item, encoded {@link NestedReference}, or UTF-8 alias target, as flagged
+ * </pre>
+ *
+ * <p>Compressed items are uncompressed NBT in a zstd frame. They cannot be decoded without their
+ * dictionary, so they are only ever seen by {@link CompressedStore}.
+ *
+ * @param item the serialized item, encoded nested reference, or alias target
+ * @param chain the chain summary, or {@code null} if the record predates summaries
+ * @param kind the kind of content in the record
+ * @param dataVersion the data version the item was serialized under, or {@link #UNKNOWN_DATA_VERSION}
+ */
+public record CaptchaRecord(
+    byte @NotNull [] item,
+    @Nullable ChainSummary chain,
+    @NotNull Kind kind,
+    int dataVersion
+) {
+
+  /** The data version of records that do not contain a serialized item or predate tracking it. */
+  public static final int UNKNOWN_DATA_VERSION = 0;
+
+  private static final byte MAGIC = (byte) 0xCA;
+  private static final byte VERSION = 3;
+  private static final int FLAG_CHAIN = 1;
+  private static final int FLAG_NESTED = 1 << 1;
+  private static final int FLAG_ALIAS = 1 << 2;
+  private static final int FLAG_COMPRESSED = 1 << 3;
+  private static final @NotNull Decompressor NO_DECOMPRESSOR = (dictionary, length, data) -> {
+    throw new IOException("Record is compressed with dictionary " + dictionary);
+  };
+
+  /**
+   * Create a record containing a serialized item.
+   *
+   * @param item the serialized item
+   * @param chain the chain summary, or {@code null} if the record predates summaries
+   * @param dataVersion the data version the item was serialized under
+   */
+  public CaptchaRecord(byte @NotNull [] item, @Nullable ChainSummary chain, int dataVersion) {
+    this(item, chain, Kind.ITEM, dataVersion);
+  }
+
+  /**
+   * Create a record referencing a stack of other cards.
+   *
+   * @param reference the reference
+   * @param chain the chain summary
+   * @return the record
+   */
+  public static @NotNull CaptchaRecord nested(@NotNull NestedReference reference, @NotNull ChainSummary chain) {
+    return new CaptchaRecord(reference.encode(), chain, Kind.NESTED, UNKNOWN_DATA_VERSION);
+  }
+
+  /**
+   * Create a record redirecting an older hash to the hash now used for the same contents.
+   *
+   * @param target the hash the contents are stored under
+   * @return the record
+   */
+  public static @NotNull CaptchaRecord alias(@NotNull String target) {
+    return new CaptchaRecord(target.getBytes(StandardCharsets.UTF_8), null, Kind.ALIAS, UNKNOWN_DATA_VERSION);
+  }
+
+  /**
+   * Decode a stored record.
+   *
+   * @param data the stored data
+   * @return the decoded record
+   * @throws IOException if the data is malformed
+   */
+  public static @NotNull CaptchaRecord decode(byte @NotNull [] data) throws IOException {
+    return decode(data, NO_DECOMPRESSOR);
+  }
+
+  /**
+   * Decode a stored record that may be compressed.
+   *
+   * @param data the stored data
+   * @param decompressor the function restoring compressed items
+   * @return the decoded record
+   * @throws IOException if the data is malformed or cannot be decompressed
+   */
+  public static @NotNull CaptchaRecord decode(
+      byte @NotNull [] data,
+      @NotNull Decompressor decompressor
+  ) throws IOException {
+    if (data.length == 0 || data[0] != MAGIC) {
+      return new CaptchaRecord(data, null, UNKNOWN_DATA_VERSION);
+    }
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+    byte version = in.readByte();
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Unsupported record version " + version);
+    }
+    int flags = in.readUnsignedByte();
+    int dataVersion = version >= 2 ? in.readInt() : UNKNOWN_DATA_VERSION;
+
+    ChainSummary chain = null;
+    if ((flags & FLAG_CHAIN) != 0) {
+      chain = new ChainSummary(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+    }
+
+    int dictionary = 0;
+    int uncompressedLength = 0;
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      dictionary = in.readInt();
+      uncompressedLength = in.readInt();
+    }
+
+    byte[] item = new byte[in.readInt()];
+    in.readFully(item);
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      item = decompressor.decompress(dictionary, uncompressedLength, item);
+    }
+
+    Kind kind;
+    if ((flags & FLAG_ALIAS) != 0) {
+      kind = Kind.ALIAS;
+    } else if ((flags & FLAG_NESTED) != 0) {
+      kind = Kind.NESTED;
+    } else {
+      kind = Kind.ITEM;
+    }
+
+    return new CaptchaRecord(item, chain, kind, dataVersion);
+  }
+
+  /**
+   * Get the alias target of stored data without fully decoding it.
+   *
+   * @param data the stored data
+   * @return the alias target or {@code null} if the data is not an alias
+   * @throws IOException if the data is malformed
+   */
+  public static @Nullable String getAliasTarget(byte @NotNull [] data) throws IOException {
+    // Aliases never carry a chain summary, so anything else can be rejected from the header.
+    if (data.length < 3 || data[0] != MAGIC || (data[2] & FLAG_ALIAS) == 0) {
+      return null;
+    }
+    return decode(data).aliasTarget();
+  }
+
+  /**
+   * Check if stored data holds a compressed item.
+   *
+   * @param data the stored data
+   * @return true if the item must be decompressed to be read
+   */
+  public static boolean isCompressed(byte @NotNull [] data) {
+    return data.length >= 3 && data[0] == MAGIC && data[1] >= 3 && (data[2] & FLAG_COMPRESSED) != 0;
+  }
+
+  /**
+   * Get the referenced cards if this is a nested record.
+   *
+   * @return the reference or {@code null} if the record does not reference other cards
+   * @throws IOException if the reference is malformed
+   */
+  public @Nullable NestedReference reference() throws IOException {
+    return kind == Kind.NESTED ? NestedReference.decode(item) : null;
+  }
+
+  /**
+   * Get the hash the contents are stored under if this is an alias record.
+   *
+   * @return the alias target or {@code null} if the record is not an alias
+   */
+  public @Nullable String aliasTarget() {
+    return kind == Kind.ALIAS ? new String(item, StandardCharsets.UTF_8) : null;
+  }
+
+  /**
+   * Create a copy of this record with a different chain summary.
+   *
+   * @param chain the chain summary
+   * @return the new record
+   */
+  @Contract(pure = true)
+  public @NotNull CaptchaRecord withChain(@Nullable ChainSummary chain) {
+    return new CaptchaRecord(item, chain, kind, dataVersion);
+  }
+
+  /**
+   * Create a copy of this record with the item serialized under a different data version.
+   *
+   * @param item the serialized item
+   * @param dataVersion the data version the item was serialized under
+   * @return the new record
+   */
+  @Contract(pure = true)
+  public @NotNull CaptchaRecord withItem(byte @NotNull [] item, int dataVersion) {
+    return new CaptchaRecord(item, chain, kind, dataVersion);
+  }
+
+  /**
+   * Encode the record for storage.
+   *
+   * @return the encoded record
+   */
+  @Contract(pure = true)
+  public byte @NotNull [] encode() {
+    return encode(item, 0, 0);
+  }
+
+  /**
+   * Encode the record for storage with the item replaced by its compressed form.
+   *
+   * @param compressed the compressed item
+   * @param dictionary the id of the dictionary the item was compressed with
+   * @param uncompressedLength the length of the item once decompressed
+   * @return the encoded record
+   */
+  @Contract(pure = true)
+  public byte @NotNull [] encodeCompressed(byte @NotNull [] compressed, int dictionary, int uncompressedLength) {
+    if (kind != Kind.ITEM) {
+      throw new IllegalStateException("Only items can be compressed");
+    }
+    return encode(compressed, dictionary, uncompressedLength);
+  }
+
+  private byte @NotNull [] encode(byte @NotNull [] payload, int dictionary, int uncompressedLength) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 128);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(MAGIC);
+      out.writeByte(VERSION);
+      int flags = chain != null ? FLAG_CHAIN : 0;
+      if (kind == Kind.NESTED) {
+        flags |= FLAG_NESTED;
+      } else if (kind == Kind.ALIAS) {
+        flags |= FLAG_ALIAS;
+      }
+      // Dictionary ids start at 1.
+      if (dictionary != 0) {
+        flags |= FLAG_COMPRESSED;
+      }
+      out.writeByte(flags);
+      out.writeInt(dataVersion);
+
+      if (chain != null) {
+        out.writeInt(chain.depth());
+        out.writeUTF(chain.rootHash());
+        out.writeUTF(chain.rootName());
+        out.writeUTF(chain.rootType());
+        out.writeLong(chain.rootQuantity());
+      }
+
+      if (dictionary != 0) {
+        out.writeInt(dictionary);
+        out.writeInt(uncompressedLength);
+      }
+
+      out.writeInt(payload.length);
+      out.write(payload);
+    } catch (IOException e) {
+      // In-memory streams do not throw.
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * A function restoring a compressed item.
+   */
+  @FunctionalInterface
+  public interface Decompressor {
+
+    /**
+     * Decompress an item.
+     *
+     * @param dictionary the id of the dictionary the item was compressed with
+     * @param length the length of the item once decompressed
+     * @param data the compressed item
+     * @return the serialized item
+     * @throws IOException if the item cannot be decompressed
+     */
+    byte @NotNull [] decompress(int dictionary, int length, byte @NotNull [] data) throws IOException;
+
+  }
+
+  /**
+   * The kind of content held by a record.
+   */
+  public enum Kind {
+    /** A serialized item. */
+    ITEM,
+    /** A reference to a stack of other cards. */
+    NESTED,
+    /** A redirect to another hash. */
+    ALIAS
+  }
+
+}
@@ -0,0 +1,190 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent storage for serialized captchacard contents.
+ *
+ * <p>Records are keyed by hash and are immutable once written, with the exception of in-place
+ * format upgrades via {@link #replace(String, byte[])}. Implementations must be safe for concurrent
+ * use from multiple threads, including modifications. Writes are flushed from the I/O thread and
+ * from capturing threads when the write-behind queue is full, while upgrades, aliases, and deletions
+ * of unreferenced records each run on their own executors.
+ */
+public interface CaptchaStore extends RecordSink, AutoCloseable {
+
+  /**
+   * Open the store, creating it if it does not exist.
+   *
+   * @throws IOException if the store cannot be opened
+   */
+  void open() throws IOException;
+
+  /**
+   * Check if the store is shared with other servers. Shared stores may be modified at any time by
+   * another server, so hashes must be claimed with {@link #putIfAbsent(String, byte[])}, and counts
+   * of live cards kept by a single server are meaningless.
+   *
+   * @return true if the store is shared
+   */
+  default boolean isShared() {
+    return false;
+  }
+
+  /**
+   * Check if a record is stored.
+   *
+   * @param hash the hash of the record
+   * @return true if the record is stored
+   * @throws IOException if the store cannot be read
+   */
+  boolean contains(@NotNull String hash) throws IOException;
+
+  /**
+   * Get the number of records stored.
+   *
+   * @return the number of records
+   * @throws UncheckedIOException if the store cannot be read
+   */
+  int size();
+
+  /**
+   * Get all stored hashes. Depending on the implementation, this may be a live view or a snapshot.
+   *
+   * @return the stored hashes
+   * @throws UncheckedIOException if the store cannot be read
+   */
+  @NotNull Set<String> keys();
+
+  /**
+   * Get stored hashes starting with a prefix without listing the entire store.
+   *
+   * @param prefix the prefix
+   * @param limit the maximum number of hashes to return
+   * @return up to the limit of matching hashes
+   * @throws IOException if the store cannot be read
+   */
+  @NotNull List<String> keys(@NotNull String prefix, int limit) throws IOException;
+
+  /**
+   * Read a record.
+   *
+   * @param hash the hash of the record
+   * @return the record data or {@code null} if the record is not stored
+   * @throws IOException if the record cannot be read
+   */
+  byte @Nullable [] get(@NotNull String hash) throws IOException;
+
+  /**
+   * Read many records. Implementations should override this if they can read records together
+   * more cheaply than one at a time.
+   *
+   * @param hashes the hashes of the records
+   * @return the record data by hash, excluding records that are not stored
+   * @throws IOException if a record cannot be read
+   */
+  default @NotNull Map<String, byte[]> getAll(@NotNull Collection<String> hashes) throws IOException {
+    Map<String, byte[]> records = new HashMap<>();
+    for (String hash : hashes) {
+      byte[] data = get(hash);
+      if (data != null) {
+        records.put(hash, data);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Write a record if it is not already stored. The record is not durable until the store is
+   * {@link #sync() synced}.
+   *
+   * @param hash the hash of the record
+   * @param data the record data
+   * @throws IOException if the record cannot be written
+   */
+  @Override
+  void write(@NotNull String hash, byte @NotNull [] data) throws IOException;
+
+  /**
+   * Atomically write a record and make it durable if no record is stored under the hash. Unlike
+   * {@link #write(String, byte[])}, the outcome is known, so this is safe to use to claim a hash in
+   * a {@link #isShared() shared} store.
+   *
+   * <p>The default implementation is only atomic with respect to other modifications of the same
+   * store instance, as they are never issued concurrently.
+   *
+   * @param hash the hash of the record
+   * @param data the record data
+   * @return {@code null} if the record was written, or the record already stored
+   * @throws IOException if the record cannot be read or written
+   */
+  default byte @Nullable [] putIfAbsent(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    byte[] existing = get(hash);
+    if (existing != null) {
+      return existing;
+    }
+    write(hash, data);
+    sync();
+    return null;
+  }
+
+  /**
+   * Write a record, superseding any existing record for the same hash, and make it durable.
+   *
+   * @param hash the hash of the record
+   * @param data the record data
+   * @throws IOException if the record cannot be written
+   */
+  void replace(@NotNull String hash, byte @NotNull [] data) throws IOException;
+
+  /**
+   * Write many records, superseding any existing records for the same hashes, and make them
+   * durable. Implementations should override this if they can sync once for the whole batch.
+   *
+   * @param records the record data by hash
+   * @throws IOException if the records cannot be written
+   */
+  default void replaceAll(@NotNull Map<String, byte[]> records) throws IOException {
+    for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+      replace(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Delete a record. The deletion is not durable until the store is {@link #sync() synced}.
+   *
+   * @param hash the hash of the record
+   * @return true if the record was stored
+   * @throws IOException if the deletion cannot be written
+   */
+  boolean delete(@NotNull String hash) throws IOException;
+
+  /**
+   * Reclaim space held by superseded and deleted records, if the implementation requires it.
+   *
+   * @param liveThreshold the fraction of live data below which storage is rewritten
+   * @return the number of storage units rewritten
+   * @throws IOException if compaction fails
+   */
+  default int compact(double liveThreshold) throws IOException {
+    return 0;
+  }
+
+  /**
+   * Make all pending modifications durable and release the store.
+   *
+   * @throws IOException if the store cannot be closed cleanly
+   */
+  @Override
+  void close() throws IOException;
+
+}
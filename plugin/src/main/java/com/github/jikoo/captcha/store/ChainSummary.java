@@ -0,0 +1,20 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A summary of the chain of nested captchacards represented by a hash.
+ *
+ * @param depth the number of times a card with this hash must be opened to reach the root item
+ * @param rootHash the hash of the record storing the root item
+ * @param rootName the display name of the root item in MiniMessage format
+ * @param rootType the namespaced key of the root item's type
+ * @param rootQuantity the total number of root items represented by a single card
+ */
+public record ChainSummary(
+    int depth,
+    @NotNull String rootHash,
+    @NotNull String rootName,
+    @NotNull String rootType,
+    long rootQuantity
+) {}
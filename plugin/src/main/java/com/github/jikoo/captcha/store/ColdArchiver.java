@@ -0,0 +1,192 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background move of records that have not been read in a long time from the live store into
+ * {@link Archive} packs.
+ *
+ * <p>Cold records are written to a new pack, which is made durable before anything is removed
+ * from the live store. Removals are applied on the store's write executor in small batches, and
+ * only to records that are unchanged and still unread, so they cannot race other updates. A
+ * record read between the two steps simply remains live with a spare copy in the pack.
+ */
+public final class ColdArchiver {
+
+  private static final int MIN_PACK_RECORDS = 1_000;
+  private static final int MAX_PACK_RECORDS = 1_000_000;
+  private static final int BATCH_SIZE = 100;
+
+  private final @NotNull CaptchaStore store;
+  private final @NotNull Archive archive;
+  private final @NotNull AccessLog accessLog;
+  private final @NotNull Executor writeExecutor;
+  private final int afterDays;
+  private final @NotNull Logger logger;
+  private final @NotNull ScheduledExecutorService executor;
+
+  /**
+   * Create a new archiver.
+   *
+   * @param store the live store
+   * @param archive the archive to move cold records into
+   * @param accessLog the log of record access
+   * @param writeExecutor the executor all other store modifications run on
+   * @param afterDays the number of days without access after which a record is cold
+   * @param logger the logger used to report progress
+   */
+  public ColdArchiver(
+      @NotNull CaptchaStore store,
+      @NotNull Archive archive,
+      @NotNull AccessLog accessLog,
+      @NotNull Executor writeExecutor,
+      int afterDays,
+      @NotNull Logger logger
+  ) {
+    this.store = store;
+    this.archive = archive;
+    this.accessLog = accessLog;
+    this.writeExecutor = writeExecutor;
+    this.afterDays = afterDays;
+    this.logger = logger;
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Captcha Archive");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+  }
+
+  /**
+   * Begin archiving periodically.
+   *
+   * @param intervalHours the delay in hours between runs
+   */
+  public void start(long intervalHours) {
+    // Leave startup to settle first.
+    executor.scheduleWithFixedDelay(this::run, 10, TimeUnit.HOURS.toMinutes(intervalHours), TimeUnit.MINUTES);
+  }
+
+  /**
+   * Stop archiving. An interrupted run leaves all records live.
+   */
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private void run() {
+    int cutoff = AccessLog.today() - afterDays;
+    // Before then, records may have been read without it being logged.
+    if (!accessLog.isTrackedSince(cutoff)) {
+      return;
+    }
+
+    List<String> cold = new ArrayList<>();
+    try {
+      for (String hash : store.keys()) {
+        if (!accessLog.isAccessedSince(hash, cutoff)) {
+          cold.add(hash);
+          if (cold.size() >= MAX_PACK_RECORDS) {
+            break;
+          }
+        }
+      }
+    } catch (UncheckedIOException e) {
+      logger.log(Level.WARNING, "Unable to list card records for archival", e);
+      return;
+    }
+    if (cold.size() < MIN_PACK_RECORDS) {
+      return;
+    }
+    cold.sort(ArchivePack.HASH_ORDER);
+
+    ArchivePack pack;
+    long bytes;
+    try (ArchivePack.Writer writer = archive.createPack()) {
+      for (String hash : cold) {
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        byte[] data = store.get(hash);
+        if (data == null) {
+          continue;
+        }
+        if (writer.getBytes() + data.length > ArchivePack.MAX_BYTES) {
+          // The remainder is picked up by the next run.
+          break;
+        }
+        writer.add(hash, data);
+      }
+      bytes = writer.getBytes();
+      pack = writer.finish();
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Unable to write card archive pack", e);
+      return;
+    }
+    archive.add(pack);
+
+    AtomicInteger removed = new AtomicInteger();
+    try {
+      Map<String, byte[]> batch = new HashMap<>();
+      pack.forEach((hash, data) -> {
+        batch.put(hash, data);
+        if (batch.size() >= BATCH_SIZE) {
+          remove(new HashMap<>(batch), cutoff, removed);
+          batch.clear();
+        }
+      });
+      remove(batch, cutoff, removed);
+    } catch (IOException | CompletionException | RejectedExecutionException e) {
+      // Records stay live; the pack holds spare copies.
+      logger.log(Level.WARNING, "Unable to remove archived card records from live storage", e);
+    }
+
+    logger.info(() -> String.format(
+        "Archived %d card records unread for %d days to %s (%.1fMiB before compression).",
+        removed.get(),
+        afterDays,
+        pack.getFile().getFileName(),
+        bytes / (1024.0 * 1024.0)));
+  }
+
+  private void remove(@NotNull Map<String, byte[]> batch, int cutoff, @NotNull AtomicInteger removed) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    // Wait for each batch so that removals never pile up in the write queue.
+    CompletableFuture.runAsync(() -> {
+      try {
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+          String hash = entry.getKey();
+          if (!accessLog.isAccessedSince(hash, cutoff)
+              && Arrays.equals(store.get(hash), entry.getValue())
+              && store.delete(hash)) {
+            removed.incrementAndGet();
+          }
+        }
+        store.sync();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, writeExecutor).join();
+  }
+
+}
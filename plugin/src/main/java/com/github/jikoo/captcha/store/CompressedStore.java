@@ -0,0 +1,426 @@
+package com.github.jikoo.captcha.store;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A store compressing serialized items with a trained zstd dictionary before passing them on.
+ *
+ * <p>Serialized items are GZIP NBT. Most are the same few hundred vanilla materials with nearly
+ * identical component layouts, but each is too small for GZIP to find much repetition within it.
+ * A dictionary trained on a sample of stored items captures what they share instead. Items are
+ * unpacked to plain NBT and compressed against the dictionary. On read, they are repacked as
+ * uncompressed GZIP, which costs little more than a copy.
+ *
+ * <p>Dictionaries live in the wrapped store under keys that can never be hashes, so they travel
+ * with the records, including to other servers sharing the store. They are hidden from
+ * {@link #keys()} and {@link #size()}. Records are compressed individually and flagged in their
+ * header, so uncompressed records remain readable, and records compressed with a dictionary that
+ * this instance has not seen yet load it on demand.
+ */
+public class CompressedStore implements CaptchaStore {
+
+  private static final String DICTIONARY_PREFIX = "dictionary:";
+  private static final int DICTIONARY_SIZE = 64 * 1024;
+  private static final int MIN_SAMPLES = 1_000;
+  private static final int MAX_SAMPLES = 20_000;
+  private static final int MAX_SAMPLE_BYTES = 16 * 1024 * 1024;
+
+  private final @NotNull CaptchaStore delegate;
+  private final boolean enabled;
+  private final int level;
+  private final @NotNull Logger logger;
+  private final @NotNull Map<Integer, ZstdDictDecompress> decompressors = new ConcurrentHashMap<>();
+  private final @NotNull List<ZstdDictCompress> compressors = new ArrayList<>();
+  private volatile @Nullable Dictionary active;
+  private volatile int dictionaries;
+
+  /**
+   * Create a new store.
+   *
+   * @param delegate the store to hold compressed records
+   * @param enabled whether new records are compressed; existing records are readable regardless
+   * @param level the zstd compression level
+   * @param logger the logger used to report problems
+   */
+  public CompressedStore(@NotNull CaptchaStore delegate, boolean enabled, int level, @NotNull Logger logger) {
+    this.delegate = delegate;
+    this.enabled = enabled;
+    this.level = level;
+    this.logger = logger;
+  }
+
+  @Override
+  public void open() throws IOException {
+    delegate.open();
+    // Ids are assigned in sequence, so the newest dictionary is the last one present.
+    for (int id = 1; ; ++id) {
+      byte[] dictionary = delegate.get(getKey(id));
+      if (dictionary == null) {
+        break;
+      }
+      register(id, dictionary);
+    }
+  }
+
+  private static @NotNull String getKey(int id) {
+    return DICTIONARY_PREFIX + id;
+  }
+
+  /**
+   * Check if new records are being compressed.
+   *
+   * @return true if a dictionary is in use
+   */
+  public boolean isCompressing() {
+    return active != null;
+  }
+
+  /**
+   * Train a dictionary from a random sample of stored items. Items compress best against a
+   * dictionary trained on the store's actual contents, so this should only be done once the store
+   * holds a representative set of records.
+   *
+   * @return the dictionary, or {@code null} if too few items are stored to train one
+   * @throws IOException if records cannot be read or training fails
+   */
+  public byte @Nullable [] trainDictionary() throws IOException {
+    List<String> sample = sampleKeys();
+    if (sample.size() < MIN_SAMPLES) {
+      return null;
+    }
+
+    ZstdDictTrainer trainer = new ZstdDictTrainer(MAX_SAMPLE_BYTES, DICTIONARY_SIZE);
+    int samples = 0;
+    for (String hash : sample) {
+      byte[] data = get(hash);
+      if (data == null) {
+        continue;
+      }
+      CaptchaRecord captchaRecord;
+      byte[] nbt;
+      try {
+        captchaRecord = CaptchaRecord.decode(data);
+        if (captchaRecord.kind() != CaptchaRecord.Kind.ITEM) {
+          continue;
+        }
+        nbt = gunzip(captchaRecord.item());
+      } catch (IOException e) {
+        logger.log(Level.FINE, e, () -> "Skipping malformed card record " + hash);
+        continue;
+      }
+      if (!trainer.addSample(nbt)) {
+        break;
+      }
+      ++samples;
+    }
+
+    if (samples < MIN_SAMPLES) {
+      return null;
+    }
+    try {
+      return trainer.trainSamples();
+    } catch (ZstdException e) {
+      throw new IOException("Unable to train compression dictionary", e);
+    }
+  }
+
+  private @NotNull List<String> sampleKeys() {
+    // Reservoir sampling avoids copying every key of a large store.
+    List<String> sample = new ArrayList<>(MAX_SAMPLES);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int seen = 0;
+    for (String hash : keys()) {
+      ++seen;
+      if (sample.size() < MAX_SAMPLES) {
+        sample.add(hash);
+      } else {
+        int index = random.nextInt(seen);
+        if (index < MAX_SAMPLES) {
+          sample.set(index, hash);
+        }
+      }
+    }
+    return sample;
+  }
+
+  /**
+   * Store a dictionary and compress new records with it. Records written concurrently are
+   * compressed with whichever dictionary was active when they were written.
+   *
+   * <p>If another server sharing the store has installed a dictionary in the meantime, that
+   * dictionary is used instead so that servers do not each add their own.
+   *
+   * @param dictionary the dictionary
+   * @return the id of the dictionary in use
+   * @throws IOException if the dictionary cannot be stored
+   */
+  public int installDictionary(byte @NotNull [] dictionary) throws IOException {
+    int id = dictionaries + 1;
+    byte[] existing = delegate.putIfAbsent(getKey(id), dictionary);
+    register(id, existing != null ? existing : dictionary);
+    return id;
+  }
+
+  private synchronized void register(int id, byte @NotNull [] dictionary) {
+    decompressors.computeIfAbsent(id, key -> new ZstdDictDecompress(dictionary));
+    if (id <= dictionaries) {
+      return;
+    }
+    dictionaries = id;
+    if (enabled) {
+      ZstdDictCompress compressor = new ZstdDictCompress(dictionary, level);
+      compressors.add(compressor);
+      active = new Dictionary(id, compressor);
+    }
+  }
+
+  private @NotNull ZstdDictDecompress getDecompressor(int id) throws IOException {
+    ZstdDictDecompress decompressor = decompressors.get(id);
+    if (decompressor != null) {
+      return decompressor;
+    }
+
+    // Installed by another server sharing the store.
+    byte[] dictionary = delegate.get(getKey(id));
+    if (dictionary == null) {
+      throw new IOException("Missing compression dictionary " + id);
+    }
+    return decompressors.computeIfAbsent(id, key -> new ZstdDictDecompress(dictionary));
+  }
+
+  private byte @NotNull [] compress(byte @NotNull [] data) throws IOException {
+    Dictionary dictionary = active;
+    if (dictionary == null || CaptchaRecord.isCompressed(data)) {
+      return data;
+    }
+
+    CaptchaRecord captchaRecord = CaptchaRecord.decode(data);
+    if (captchaRecord.kind() != CaptchaRecord.Kind.ITEM) {
+      return data;
+    }
+
+    byte[] nbt = gunzip(captchaRecord.item());
+    byte[] compressed;
+    try {
+      compressed = Zstd.compress(nbt, dictionary.compressor());
+    } catch (ZstdException e) {
+      throw new IOException("Unable to compress record", e);
+    }
+    // Unusual items may not benefit, and are cheaper to read as they are.
+    if (compressed.length >= captchaRecord.item().length) {
+      return data;
+    }
+    return captchaRecord.encodeCompressed(compressed, dictionary.id(), nbt.length);
+  }
+
+  private byte @NotNull [] decompress(byte @NotNull [] data) throws IOException {
+    if (!CaptchaRecord.isCompressed(data)) {
+      return data;
+    }
+    return CaptchaRecord.decode(data, this::decompressItem).encode();
+  }
+
+  private byte @NotNull [] decompressItem(int dictionary, int length, byte @NotNull [] data) throws IOException {
+    byte[] nbt;
+    try {
+      nbt = Zstd.decompress(data, getDecompressor(dictionary), length);
+    } catch (ZstdException e) {
+      throw new IOException("Unable to decompress record", e);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(nbt.length + 64);
+    try (GZIPOutputStream out = new StoredGzipOutputStream(bytes)) {
+      out.write(nbt);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Check if two serialized items hold the same data. Records read from this store are repacked
+   * differently than the server serializes items, so their bytes only match once unpacked.
+   *
+   * @param stored the item of a stored record
+   * @param serialized the item as serialized by the server
+   * @return true if the items are identical
+   */
+  public static boolean isSameItem(byte @NotNull [] stored, byte @NotNull [] serialized) {
+    if (Arrays.equals(stored, serialized)) {
+      return true;
+    }
+    if (!isGzip(stored) || !isGzip(serialized)) {
+      // Nested references are not GZIP and are never repacked, so they only match exactly.
+      return false;
+    }
+    try {
+      return Arrays.equals(gunzip(stored), gunzip(serialized));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean isGzip(byte @NotNull [] data) {
+    return data.length > 2 && (data[0] & 0xFF) == 0x1F && (data[1] & 0xFF) == 0x8B;
+  }
+
+  private static byte @NotNull [] gunzip(byte @NotNull [] item) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(item))) {
+      return in.readAllBytes();
+    }
+  }
+
+  @Override
+  public boolean isShared() {
+    return delegate.isShared();
+  }
+
+  @Override
+  public boolean contains(@NotNull String hash) throws IOException {
+    return delegate.contains(hash);
+  }
+
+  @Override
+  public int size() {
+    return Math.max(0, delegate.size() - dictionaries);
+  }
+
+  @Override
+  public @NotNull Set<String> keys() {
+    Set<String> keys = delegate.keys();
+    // Another server may have added a dictionary that has not been seen here yet.
+    if (dictionaries == 0 && !delegate.isShared()) {
+      return keys;
+    }
+    Set<String> hashes = new HashSet<>(keys);
+    hashes.removeIf(key -> key.startsWith(DICTIONARY_PREFIX));
+    return hashes;
+  }
+
+  @Override
+  public @NotNull List<String> keys(@NotNull String prefix, int limit) throws IOException {
+    if (!prefix.startsWith(DICTIONARY_PREFIX) && !DICTIONARY_PREFIX.startsWith(prefix)) {
+      return delegate.keys(prefix, limit);
+    }
+    // There are only ever a few dictionaries, so a little extra room makes up for them.
+    List<String> keys = new ArrayList<>(delegate.keys(prefix, limit + 16));
+    keys.removeIf(key -> key.startsWith(DICTIONARY_PREFIX));
+    return keys.size() > limit ? keys.subList(0, limit) : keys;
+  }
+
+  @Override
+  public byte @Nullable [] get(@NotNull String hash) throws IOException {
+    byte[] data = delegate.get(hash);
+    return data == null ? null : decompress(data);
+  }
+
+  @Override
+  public @NotNull Map<String, byte[]> getAll(@NotNull Collection<String> hashes) throws IOException {
+    Map<String, byte[]> records = new HashMap<>(delegate.getAll(hashes));
+    for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+      entry.setValue(decompress(entry.getValue()));
+    }
+    return records;
+  }
+
+  @Override
+  public void write(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    delegate.write(hash, compress(data));
+  }
+
+  @Override
+  public byte @Nullable [] putIfAbsent(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    byte[] existing = delegate.putIfAbsent(hash, compress(data));
+    return existing == null ? null : decompress(existing);
+  }
+
+  @Override
+  public void replace(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    delegate.replace(hash, compress(data));
+  }
+
+  @Override
+  public void replaceAll(@NotNull Map<String, byte[]> records) throws IOException {
+    Map<String, byte[]> compressed = new HashMap<>();
+    for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+      compressed.put(entry.getKey(), compress(entry.getValue()));
+    }
+    delegate.replaceAll(compressed);
+  }
+
+  @Override
+  public boolean delete(@NotNull String hash) throws IOException {
+    return delegate.delete(hash);
+  }
+
+  @Override
+  public int compact(double liveThreshold) throws IOException {
+    return delegate.compact(liveThreshold);
+  }
+
+  @Override
+  public void sync() throws IOException {
+    delegate.sync();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      delegate.close();
+    } finally {
+      synchronized (this) {
+        active = null;
+        compressors.forEach(ZstdDictCompress::close);
+        compressors.clear();
+      }
+      decompressors.values().forEach(ZstdDictDecompress::close);
+      decompressors.clear();
+    }
+  }
+
+  /**
+   * A dictionary ready for compression.
+   *
+   * @param id the id of the dictionary
+   * @param compressor the prepared dictionary
+   */
+  private record Dictionary(int id, @NotNull ZstdDictCompress compressor) {}
+
+  /**
+   * A GZIP stream that stores data without compressing it. Decompressed records are only held in
+   * memory, where read speed matters far more than size.
+   */
+  private static final class StoredGzipOutputStream extends GZIPOutputStream {
+
+    private StoredGzipOutputStream(@NotNull OutputStream out) throws IOException {
+      super(out);
+      def.setLevel(Deflater.NO_COMPRESSION);
+    }
+
+  }
+
+}
@@ -0,0 +1,275 @@
+package com.github.jikoo.captcha.store;
+
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background rewrite of stored items serialized under an older data version.
+ *
+ * <p>Deserializing an outdated item runs it through the data fixer, which is far slower than
+ * reading a current item. Rewriting records ahead of use keeps that cost off the load path after a
+ * server update. Records are examined at a capped rate on a dedicated thread, and rewrites are
+ * applied on the store's write executor only if the record is unchanged, so they cannot race other
+ * updates. Once a full pass succeeds, the data version is recorded so later starts skip the scan.
+ */
+public final class DataVersionUpgrader {
+
+  private static final String MARKER = "data-version";
+  private static final int BATCH_SIZE = 100;
+  private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
+  private final @NotNull CaptchaStore store;
+  private final @NotNull Executor writeExecutor;
+  private final @NotNull BiConsumer<String, byte[]> onUpgrade;
+  private final @NotNull Path marker;
+  private final int dataVersion;
+  private final int maxPerSecond;
+  private final @NotNull Logger logger;
+  private final @NotNull ExecutorService executor;
+  private final AtomicInteger upgraded = new AtomicInteger();
+  private final AtomicInteger examined = new AtomicInteger();
+  private volatile int total;
+  private volatile boolean writeFailed;
+
+  /**
+   * Create a new upgrader.
+   *
+   * @param store the store to upgrade
+   * @param dataDir the directory to record completed upgrades in
+   * @param writeExecutor the executor all other store modifications run on
+   * @param onUpgrade a callback run on the write executor for each rewritten record
+   * @param dataVersion the current data version
+   * @param maxPerSecond the maximum number of records to examine per second
+   * @param logger the logger used to report progress
+   */
+  public DataVersionUpgrader(
+      @NotNull CaptchaStore store,
+      @NotNull Path dataDir,
+      @NotNull Executor writeExecutor,
+      @NotNull BiConsumer<String, byte[]> onUpgrade,
+      int dataVersion,
+      int maxPerSecond,
+      @NotNull Logger logger
+  ) {
+    this.store = store;
+    this.marker = dataDir.resolve(MARKER);
+    this.writeExecutor = writeExecutor;
+    this.onUpgrade = onUpgrade;
+    this.dataVersion = dataVersion;
+    this.maxPerSecond = maxPerSecond;
+    this.logger = logger;
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Captcha Upgrade");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+  }
+
+  /**
+   * Begin upgrading in the background if stored records may be outdated.
+   */
+  public void start() {
+    if (maxPerSecond <= 0 || readMarker() >= dataVersion) {
+      return;
+    }
+    executor.execute(this::run);
+  }
+
+  /**
+   * Stop upgrading. An interrupted upgrade is resumed on the next start.
+   */
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Get the number of records examined by the current upgrade.
+   *
+   * @return the number of records examined
+   */
+  public int getExamined() {
+    return examined.get();
+  }
+
+  /**
+   * Get the number of records rewritten by the current upgrade.
+   *
+   * @return the number of records rewritten
+   */
+  public int getUpgraded() {
+    return upgraded.get();
+  }
+
+  /**
+   * Get the number of records to be examined by the current upgrade.
+   *
+   * @return the total number of records or 0 if no upgrade has started
+   */
+  public int getTotal() {
+    return total;
+  }
+
+  private void run() {
+    List<String> hashes = new ArrayList<>(store.keys());
+    total = hashes.size();
+    logger.info(() -> "Upgrading " + total + " card records to data version " + dataVersion + ".");
+
+    long interval = TimeUnit.SECONDS.toNanos(1) / maxPerSecond;
+    long next = System.nanoTime();
+    long nextReport = next + PROGRESS_INTERVAL;
+    boolean complete = true;
+    Map<String, byte[]> expected = new HashMap<>();
+    Map<String, byte[]> batch = new HashMap<>();
+
+    for (String hash : hashes) {
+      // Pace examination rather than rewrites; reading and decoding dominate the cost.
+      long now = System.nanoTime();
+      if (now < next) {
+        LockSupport.parkNanos(next - now);
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      next = Math.max(next, now) + interval;
+
+      try {
+        byte[] data = store.get(hash);
+        byte[] upgradedData = data == null ? null : upgrade(data);
+        if (upgradedData != null) {
+          expected.put(hash, data);
+          batch.put(hash, upgradedData);
+        }
+      } catch (Exception e) {
+        // Leave the record as-is. It is still readable through the data fixer.
+        logger.log(Level.WARNING, e, () -> "Unable to upgrade card record " + hash);
+        complete = false;
+      }
+      examined.incrementAndGet();
+
+      if (batch.size() >= BATCH_SIZE) {
+        complete &= submit(expected, batch);
+        expected = new HashMap<>();
+        batch = new HashMap<>();
+      }
+
+      if (System.nanoTime() >= nextReport) {
+        nextReport += PROGRESS_INTERVAL;
+        int done = examined.get();
+        logger.info(() -> String.format(
+            "Card record upgrade: %d/%d examined (%.1f%%), %d rewritten.",
+            done,
+            total,
+            done * 100.0 / total,
+            upgraded.get()));
+      }
+    }
+
+    complete &= submit(expected, batch);
+    if (!complete) {
+      logger.warning("Some card records could not be upgraded. They will be retried on next start.");
+      return;
+    }
+
+    try {
+      // Queued behind the final batch, so the marker is only written once every rewrite is durable.
+      writeExecutor.execute(() -> {
+        if (writeFailed) {
+          logger.warning("Some card records could not be upgraded. They will be retried on next start.");
+          return;
+        }
+        writeMarker();
+        logger.info(() -> "Card record upgrade complete: " + upgraded.get() + " of " + total + " rewritten.");
+      });
+    } catch (RejectedExecutionException e) {
+      // Shutting down, upgrade will resume on next start.
+    }
+  }
+
+  private byte @Nullable [] upgrade(byte @NotNull [] data) throws IOException {
+    CaptchaRecord captchaRecord = CaptchaRecord.decode(data);
+    if (captchaRecord.kind() != CaptchaRecord.Kind.ITEM || captchaRecord.dataVersion() >= dataVersion) {
+      return null;
+    }
+
+    // Records that predate version tracking are rewritten once, even if already current.
+    byte[] item = ItemStack.deserializeBytes(captchaRecord.item()).serializeAsBytes();
+    return captchaRecord.withItem(item, dataVersion).encode();
+  }
+
+  private boolean submit(@NotNull Map<String, byte[]> expected, @NotNull Map<String, byte[]> batch) {
+    if (batch.isEmpty()) {
+      return true;
+    }
+
+    try {
+      writeExecutor.execute(() -> {
+        // Records modified since they were read are skipped; their replacement is already current.
+        batch.keySet().removeIf(hash -> {
+          try {
+            return !Arrays.equals(store.get(hash), expected.get(hash));
+          } catch (IOException e) {
+            return true;
+          }
+        });
+        try {
+          store.replaceAll(batch);
+          batch.forEach(onUpgrade);
+          upgraded.addAndGet(batch.size());
+        } catch (IOException e) {
+          writeFailed = true;
+          logger.log(Level.WARNING, "Error writing upgraded card records", e);
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      // Shutting down, upgrade will resume on next start.
+      return false;
+    }
+  }
+
+  private int readMarker() {
+    try {
+      return Integer.parseInt(Files.readString(marker, StandardCharsets.UTF_8).strip());
+    } catch (NoSuchFileException e) {
+      return 0;
+    } catch (IOException | NumberFormatException e) {
+      logger.log(Level.WARNING, "Unable to read card record data version", e);
+      return 0;
+    }
+  }
+
+  private void writeMarker() {
+    try {
+      Path temp = marker.resolveSibling(MARKER + ".tmp");
+      Files.writeString(temp, String.valueOf(dataVersion), StandardCharsets.UTF_8);
+      Files.move(temp, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to record card record data version", e);
+    }
+  }
+
+}
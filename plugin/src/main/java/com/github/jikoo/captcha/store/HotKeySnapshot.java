@@ -0,0 +1,69 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistence of the hashes held in memory, hottest first, so that a restarted server can load them
+ * again before they are requested.
+ */
+public enum HotKeySnapshot {
+  ;
+
+  /**
+   * Write a snapshot, replacing any existing one.
+   *
+   * @param file the snapshot file
+   * @param hashes the hashes, hottest first
+   * @throws IOException if the snapshot cannot be written
+   */
+  public static void write(@NotNull Path file, @NotNull Collection<String> hashes) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(hashes.size());
+      for (String hash : hashes) {
+        out.writeUTF(hash);
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Read a snapshot.
+   *
+   * @param file the snapshot file
+   * @return the hashes, hottest first, or an empty list if there is no snapshot
+   * @throws IOException if the snapshot cannot be read
+   */
+  public static @NotNull List<String> read(@NotNull Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      int size = in.readInt();
+      // Snapshots are small; a bogus size must not cause a huge allocation.
+      List<String> hashes = new ArrayList<>(Math.min(Math.max(size, 0), 4096));
+      for (int i = 0; i < size; ++i) {
+        hashes.add(in.readUTF());
+      }
+      return hashes;
+    } catch (NoSuchFileException e) {
+      return List.of();
+    } catch (EOFException | UTFDataFormatException e) {
+      // A damaged snapshot only costs a cold start.
+      return List.of();
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * Connection settings for a {@link JdbcStore}.
+ *
+ * @param url the JDBC URL of the database
+ * @param username the database user
+ * @param password the database password
+ * @param tablePrefix the prefix of all table names
+ * @param pollInterval the delay between checks for changes made by other servers
+ * @param queryTimeout the longest a record lookup or claim may wait for the database
+ */
+public record JdbcSettings(
+    @NotNull String url,
+    @NotNull String username,
+    @NotNull String password,
+    @NotNull String tablePrefix,
+    @NotNull Duration pollInterval,
+    @NotNull Duration queryTimeout
+) {
+
+  @Override
+  public @NotNull String toString() {
+    // Never log the password.
+    return "JdbcSettings[url=" + url + ", username=" + username + ", tablePrefix=" + tablePrefix + "]";
+  }
+
+}
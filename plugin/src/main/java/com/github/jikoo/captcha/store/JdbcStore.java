@@ -0,0 +1,542 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A store in a SQL database shared by several servers.
+ *
+ * <p>Written for MariaDB and MySQL; H2 in MariaDB mode works for local testing. The MySQL driver
+ * is bundled with the server and also speaks to MariaDB.
+ *
+ * <p>Claims are made with {@link #putIfAbsent(String, byte[])}, a single atomic insert, so two
+ * servers can never store different contents under the same hash. Every modification also records
+ * an event. Each server polls for events from other servers and reports the affected hashes so
+ * that cached copies can be dropped.
+ *
+ * <p>Reads borrow connections from a small pool rather than holding one per thread, as every
+ * server sharing the database counts against its connection limit.
+ *
+ * <p>Auto-increment values may become visible out of order, so an event with a lower id than the
+ * last one seen can still appear. Skipped ids are re-checked until they appear or a short timeout
+ * passes, as ids are also skipped by rolled back transactions.
+ *
+ * <p>Lookups and claims may be made while a card is captured, so every statement is bounded by
+ * {@link JdbcSettings#queryTimeout()} rather than stalling the server thread on a slow database.
+ * Only background scans of whole tables get longer. Claims share the writing connection with other
+ * modifications, so large replacements are committed in parts to keep claims from waiting long.
+ */
+public class JdbcStore implements CaptchaStore {
+
+  private static final int MAX_PARAMETERS = 900;
+  private static final int POLL_LIMIT = 1_000;
+  private static final long GAP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  private static final long EVENT_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final int MAX_GAPS = 1_000;
+  // Connections are shared by every server on the database, so each server only opens a few.
+  private static final int MAX_READERS = 4;
+  // Replacements are committed in parts so that claims never wait on a whole upgrade.
+  private static final int REPLACE_BATCH_SIZE = 100;
+  // Scans of whole tables only run in the background, but must still not hang forever.
+  private static final int SCAN_TIMEOUT_SECONDS = 60;
+
+  private final @NotNull JdbcSettings settings;
+  private final @NotNull Consumer<String> onRemoteChange;
+  private final @NotNull Logger logger;
+  private final @NotNull String node = UUID.randomUUID().toString();
+  private final @NotNull String records;
+  private final @NotNull String events;
+  private final int queryTimeout;
+  private final @NotNull ReaderPool<Connection> readers;
+  // Skipped event ids by the time they were first noticed missing. Only used by the poll thread.
+  private final @NotNull Map<Long, Long> gaps = new HashMap<>();
+  private final @NotNull ScheduledExecutorService poller;
+  private Connection writer;
+  private long lastEvent;
+  private long nextPrune;
+
+  /**
+   * Create a new store.
+   *
+   * @param settings the connection settings
+   * @param onRemoteChange a callback for hashes modified by other servers, run on a dedicated thread
+   * @param logger the logger used to report problems
+   */
+  public JdbcStore(
+      @NotNull JdbcSettings settings,
+      @NotNull Consumer<String> onRemoteChange,
+      @NotNull Logger logger
+  ) {
+    this.settings = settings;
+    this.onRemoteChange = onRemoteChange;
+    this.logger = logger;
+    this.records = settings.tablePrefix() + "records";
+    this.events = settings.tablePrefix() + "events";
+    this.queryTimeout = (int) Math.clamp(settings.queryTimeout().toSeconds(), 1L, Integer.MAX_VALUE);
+    this.readers = new ReaderPool<>(
+        this::connect,
+        this::closeQuietly,
+        MAX_READERS,
+        settings.queryTimeout());
+    this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Captcha Sync");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public synchronized void open() throws IOException {
+    try {
+      writer = connect();
+      try (Statement statement = writer.createStatement()) {
+        statement.setQueryTimeout(SCAN_TIMEOUT_SECONDS);
+        statement.execute("CREATE TABLE IF NOT EXISTS " + records
+            + " (hash VARCHAR(64) NOT NULL PRIMARY KEY, data MEDIUMBLOB NOT NULL)");
+        statement.execute("CREATE TABLE IF NOT EXISTS " + events
+            + " (id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, hash VARCHAR(64) NOT NULL,"
+            + " node CHAR(36) NOT NULL, created BIGINT NOT NULL)");
+        // Nothing is cached yet, so earlier events are irrelevant.
+        try (ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + events)) {
+          lastEvent = result.next() ? result.getLong(1) : 0;
+        }
+      }
+      writer.setAutoCommit(false);
+    } catch (SQLException e) {
+      throw new IOException("Unable to connect to " + settings.url(), e);
+    }
+
+    long interval = Math.max(1, settings.pollInterval().toMillis());
+    poller.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  private @NotNull Connection connect() throws SQLException {
+    if (settings.username().isEmpty()) {
+      return DriverManager.getConnection(settings.url());
+    }
+    return DriverManager.getConnection(settings.url(), settings.username(), settings.password());
+  }
+
+  @Override
+  public boolean isShared() {
+    return true;
+  }
+
+  @Override
+  public boolean contains(@NotNull String hash) throws IOException {
+    return read("check for record " + hash, connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT 1 FROM " + records + " WHERE hash = ?")) {
+        statement.setQueryTimeout(queryTimeout);
+        statement.setString(1, hash);
+        try (ResultSet result = statement.executeQuery()) {
+          return result.next();
+        }
+      }
+    });
+  }
+
+  @Override
+  public int size() {
+    try {
+      return read("count records", connection -> {
+        try (Statement statement = connection.createStatement()) {
+          statement.setQueryTimeout(SCAN_TIMEOUT_SECONDS);
+          try (ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + records)) {
+            return result.next() ? result.getInt(1) : 0;
+          }
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public @NotNull Set<String> keys() {
+    try {
+      return read("list records", connection -> {
+        Set<String> keys = new HashSet<>();
+        try (Statement statement = connection.createStatement()) {
+          statement.setQueryTimeout(SCAN_TIMEOUT_SECONDS);
+          try (ResultSet result = statement.executeQuery("SELECT hash FROM " + records)) {
+            while (result.next()) {
+              keys.add(result.getString(1));
+            }
+          }
+        }
+        return keys;
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public @NotNull List<String> keys(@NotNull String prefix, int limit) throws IOException {
+    return read("list records starting with " + prefix, connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT hash FROM " + records + " WHERE hash >= ? AND hash < ? ORDER BY hash LIMIT ?")) {
+        statement.setQueryTimeout(queryTimeout);
+        return SqliteStore.selectPrefix(statement, prefix, limit);
+      }
+    });
+  }
+
+  @Override
+  public byte @Nullable [] get(@NotNull String hash) throws IOException {
+    return read("read record " + hash, connection -> select(connection, hash));
+  }
+
+  private byte @Nullable [] select(@NotNull Connection connection, @NotNull String hash) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT data FROM " + records + " WHERE hash = ?")) {
+      statement.setQueryTimeout(queryTimeout);
+      statement.setString(1, hash);
+      try (ResultSet result = statement.executeQuery()) {
+        return result.next() ? result.getBytes(1) : null;
+      }
+    }
+  }
+
+  @Override
+  public @NotNull Map<String, byte[]> getAll(@NotNull Collection<String> hashes) throws IOException {
+    List<String> unread = new ArrayList<>(hashes);
+    return read("read records", connection -> {
+      Map<String, byte[]> found = new HashMap<>();
+      for (int start = 0; start < unread.size(); start += MAX_PARAMETERS) {
+        List<String> group = unread.subList(start, Math.min(unread.size(), start + MAX_PARAMETERS));
+        String parameters = String.join(",", Collections.nCopies(group.size(), "?"));
+        try (PreparedStatement statement = connection.prepareStatement(
+            "SELECT hash, data FROM " + records + " WHERE hash IN (" + parameters + ")")) {
+          statement.setQueryTimeout(queryTimeout);
+          for (int i = 0; i < group.size(); ++i) {
+            statement.setString(i + 1, group.get(i));
+          }
+          try (ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+              found.put(result.getString(1), result.getBytes(2));
+            }
+          }
+        }
+      }
+      return found;
+    });
+  }
+
+  @Override
+  public synchronized byte @Nullable [] putIfAbsent(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    return write("claim record " + hash, () -> {
+      // Another server may delete the existing record between statements, so retry until settled.
+      while (true) {
+        if (insertIgnore(hash, data)) {
+          recordEvent(hash);
+          writer.commit();
+          return null;
+        }
+        byte[] existing = select(writer, hash);
+        writer.commit();
+        if (existing != null) {
+          return existing;
+        }
+      }
+    });
+  }
+
+  @Override
+  public synchronized void write(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    write("write record " + hash, () -> {
+      if (insertIgnore(hash, data)) {
+        recordEvent(hash);
+      }
+      writer.commit();
+      return null;
+    });
+  }
+
+  private boolean insertIgnore(@NotNull String hash, byte @NotNull [] data) throws SQLException {
+    try (PreparedStatement statement = writer.prepareStatement(
+        "INSERT IGNORE INTO " + records + " (hash, data) VALUES (?, ?)")) {
+      statement.setQueryTimeout(queryTimeout);
+      statement.setString(1, hash);
+      statement.setBytes(2, data);
+      return statement.executeUpdate() > 0;
+    }
+  }
+
+  @Override
+  public void replace(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    replaceAll(Map.of(hash, data));
+  }
+
+  @Override
+  public void replaceAll(@NotNull Map<String, byte[]> replacements) throws IOException {
+    // Each part releases the writer, so claims made meanwhile only wait for a single part.
+    List<Map.Entry<String, byte[]>> entries = new ArrayList<>(replacements.entrySet());
+    for (int start = 0; start < entries.size(); start += REPLACE_BATCH_SIZE) {
+      replaceBatch(entries.subList(start, Math.min(entries.size(), start + REPLACE_BATCH_SIZE)));
+    }
+  }
+
+  private synchronized void replaceBatch(@NotNull List<Map.Entry<String, byte[]>> batch) throws IOException {
+    write("replace records", () -> {
+      Set<String> hashes = new HashSet<>();
+      try (PreparedStatement statement = writer.prepareStatement(
+          "REPLACE INTO " + records + " (hash, data) VALUES (?, ?)")) {
+        statement.setQueryTimeout(queryTimeout);
+        for (Map.Entry<String, byte[]> entry : batch) {
+          statement.setString(1, entry.getKey());
+          statement.setBytes(2, entry.getValue());
+          statement.addBatch();
+          hashes.add(entry.getKey());
+        }
+        statement.executeBatch();
+      }
+      recordEvents(hashes);
+      writer.commit();
+      return null;
+    });
+  }
+
+  @Override
+  public synchronized boolean delete(@NotNull String hash) throws IOException {
+    return write("delete record " + hash, () -> {
+      boolean deleted;
+      try (PreparedStatement statement = writer.prepareStatement(
+          "DELETE FROM " + records + " WHERE hash = ?")) {
+        statement.setQueryTimeout(queryTimeout);
+        statement.setString(1, hash);
+        deleted = statement.executeUpdate() > 0;
+      }
+      if (deleted) {
+        recordEvent(hash);
+      }
+      writer.commit();
+      return deleted;
+    });
+  }
+
+  private void recordEvent(@NotNull String hash) throws SQLException {
+    recordEvents(Set.of(hash));
+  }
+
+  private void recordEvents(@NotNull Collection<String> hashes) throws SQLException {
+    try (PreparedStatement statement = writer.prepareStatement(
+        "INSERT INTO " + events + " (hash, node, created) VALUES (?, ?, ?)")) {
+      statement.setQueryTimeout(queryTimeout);
+      long now = System.currentTimeMillis();
+      for (String hash : hashes) {
+        statement.setString(1, hash);
+        statement.setString(2, node);
+        statement.setLong(3, now);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+  }
+
+  @Override
+  public void sync() {
+    // Every modification is committed as it is made.
+  }
+
+  private void poll() {
+    try {
+      read("poll for changes", connection -> {
+        pollEvents(connection);
+        long now = System.currentTimeMillis();
+        if (now >= nextPrune) {
+          nextPrune = now + EVENT_RETENTION_MILLIS / 4;
+          pruneEvents(connection, now - EVENT_RETENTION_MILLIS);
+        }
+        return null;
+      });
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error checking for card storage changes", e);
+    } catch (RuntimeException e) {
+      // Never let an exception cancel polling.
+      logger.log(Level.WARNING, "Error handling card storage changes", e);
+    }
+  }
+
+  private void pollEvents(@NotNull Connection connection) throws SQLException {
+    long now = System.currentTimeMillis();
+    gaps.values().removeIf(noticed -> now - noticed > GAP_TIMEOUT_MILLIS);
+    if (!gaps.isEmpty()) {
+      List<Long> skipped = new ArrayList<>(gaps.keySet());
+      String parameters = String.join(",", Collections.nCopies(skipped.size(), "?"));
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT id, hash, node FROM " + events + " WHERE id IN (" + parameters + ")")) {
+        statement.setQueryTimeout(queryTimeout);
+        for (int i = 0; i < skipped.size(); ++i) {
+          statement.setLong(i + 1, skipped.get(i));
+        }
+        handleEvents(statement, now);
+      }
+    }
+
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT id, hash, node FROM " + events + " WHERE id > ? ORDER BY id LIMIT " + POLL_LIMIT)) {
+      statement.setQueryTimeout(queryTimeout);
+      statement.setLong(1, lastEvent);
+      handleEvents(statement, now);
+    }
+  }
+
+  private void handleEvents(@NotNull PreparedStatement statement, long now) throws SQLException {
+    try (ResultSet result = statement.executeQuery()) {
+      while (result.next()) {
+        long id = result.getLong(1);
+        gaps.remove(id);
+        for (long skipped = lastEvent + 1; skipped < id && gaps.size() < MAX_GAPS; ++skipped) {
+          gaps.put(skipped, now);
+        }
+        lastEvent = Math.max(lastEvent, id);
+        if (!node.equals(result.getString(3))) {
+          onRemoteChange.accept(result.getString(2));
+        }
+      }
+    }
+  }
+
+  private void pruneEvents(@NotNull Connection connection, long before) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "DELETE FROM " + events + " WHERE created < ?")) {
+      statement.setQueryTimeout(SCAN_TIMEOUT_SECONDS);
+      statement.setLong(1, before);
+      statement.executeUpdate();
+    }
+  }
+
+  private <T> T read(@NotNull String action, @NotNull SqlFunction<Connection, T> function) throws IOException {
+    SQLException failure = null;
+    // Pooled connections are dropped by the server after long idle periods; retry once.
+    for (int attempt = 0; attempt < 2; ++attempt) {
+      Connection connection;
+      try {
+        connection = readers.borrow();
+      } catch (SQLException e) {
+        if (failure != null) {
+          e.addSuppressed(failure);
+        }
+        throw new IOException("Unable to " + action, e);
+      }
+
+      try {
+        T result = function.apply(connection);
+        readers.release(connection);
+        return result;
+      } catch (SQLException e) {
+        if (failure != null) {
+          e.addSuppressed(failure);
+        }
+        failure = e;
+        if (isValid(connection)) {
+          readers.release(connection);
+          break;
+        }
+        readers.discard(connection);
+      } catch (RuntimeException e) {
+        readers.release(connection);
+        throw e;
+      }
+    }
+    throw new IOException("Unable to " + action, failure);
+  }
+
+  private <T> T write(@NotNull String action, @NotNull SqlSupplier<T> supplier) throws IOException {
+    try {
+      return supplier.get();
+    } catch (SQLException e) {
+      rollbackQuietly();
+      if (isValid(writer)) {
+        throw new IOException("Unable to " + action, e);
+      }
+      try {
+        closeQuietly(writer);
+        writer = connect();
+        writer.setAutoCommit(false);
+        return supplier.get();
+      } catch (SQLException retry) {
+        rollbackQuietly();
+        retry.addSuppressed(e);
+        throw new IOException("Unable to " + action, retry);
+      }
+    }
+  }
+
+  private boolean isValid(@NotNull Connection connection) {
+    try {
+      return connection.isValid(1);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private void rollbackQuietly() {
+    try {
+      writer.rollback();
+    } catch (SQLException e) {
+      logger.log(Level.FINE, "Error rolling back card database transaction", e);
+    }
+  }
+
+  private void closeQuietly(@NotNull Connection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      logger.log(Level.FINE, "Error closing card database connection", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    poller.shutdownNow();
+    try {
+      if (!poller.awaitTermination(5, TimeUnit.SECONDS)) {
+        logger.warning("Timed out waiting for card storage polling to stop.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    readers.close();
+    if (writer != null) {
+      closeQuietly(writer);
+    }
+  }
+
+  @FunctionalInterface
+  private interface SqlFunction<T, R> {
+    R apply(T value) throws SQLException;
+  }
+
+  @FunctionalInterface
+  private interface SqlSupplier<T> {
+    T get() throws SQLException;
+  }
+
+}
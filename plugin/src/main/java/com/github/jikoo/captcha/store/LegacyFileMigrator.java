@@ -0,0 +1,104 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One-shot migration of the legacy one-file-per-hash {@code .nbt} layout into a {@link CaptchaStore}.
+ *
+ * <p>Files are only deleted after the batch containing them has been synced, so an interrupted
+ * migration resumes safely on the next start.
+ */
+public final class LegacyFileMigrator {
+
+  private static final String EXTENSION = ".nbt";
+  private static final int BATCH_SIZE = 1_000;
+
+  private final @NotNull Path legacyDir;
+  private final @NotNull CaptchaStore store;
+  private final @NotNull Logger logger;
+
+  public LegacyFileMigrator(@NotNull Path legacyDir, @NotNull CaptchaStore store, @NotNull Logger logger) {
+    this.legacyDir = legacyDir;
+    this.store = store;
+    this.logger = logger;
+  }
+
+  /**
+   * Get the legacy file for a hash.
+   *
+   * @param hash the hash
+   * @return the path of the legacy file
+   */
+  public @NotNull Path getLegacyPath(@NotNull String hash) {
+    return legacyDir.resolve(hash + EXTENSION);
+  }
+
+  /**
+   * Check if there are any legacy files remaining.
+   *
+   * @return true if legacy files are present
+   */
+  public boolean hasLegacyFiles() {
+    if (!Files.isDirectory(legacyDir)) {
+      return false;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacyDir, "*" + EXTENSION)) {
+      return stream.iterator().hasNext();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to check for legacy card contents", e);
+      return false;
+    }
+  }
+
+  /**
+   * Move all legacy files into the store.
+   *
+   * @return the number of records migrated
+   */
+  public int migrate() {
+    int migrated = 0;
+    List<Path> batch = new ArrayList<>(BATCH_SIZE);
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacyDir, "*" + EXTENSION)) {
+      for (Path path : stream) {
+        String fileName = path.getFileName().toString();
+        String hash = fileName.substring(0, fileName.length() - EXTENSION.length());
+        try {
+          store.write(hash, Files.readAllBytes(path));
+          batch.add(path);
+        } catch (IOException e) {
+          logger.log(Level.WARNING, e, () -> "Unable to migrate legacy card contents " + fileName);
+        }
+
+        if (batch.size() >= BATCH_SIZE) {
+          migrated += commit(batch);
+        }
+      }
+      migrated += commit(batch);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error migrating legacy card contents", e);
+    }
+
+    return migrated;
+  }
+
+  private int commit(@NotNull List<Path> batch) throws IOException {
+    store.sync();
+    int committed = batch.size();
+    for (Path path : batch) {
+      Files.deleteIfExists(path);
+    }
+    batch.clear();
+    return committed;
+  }
+
+}
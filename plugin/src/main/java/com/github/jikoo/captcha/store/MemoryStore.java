@@ -0,0 +1,69 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A store holding all records in memory. Nothing survives a restart, so this is only suitable for
+ * testing and benchmarking.
+ */
+public class MemoryStore implements CaptchaStore {
+
+  private final @NotNull Map<String, byte[]> records = new ConcurrentHashMap<>();
+
+  @Override
+  public void open() {
+    // Nothing to load.
+  }
+
+  @Override
+  public boolean contains(@NotNull String hash) {
+    return records.containsKey(hash);
+  }
+
+  @Override
+  public int size() {
+    return records.size();
+  }
+
+  @Override
+  public @NotNull Set<String> keys() {
+    return records.keySet();
+  }
+
+  @Override
+  public @NotNull List<String> keys(@NotNull String prefix, int limit) {
+    return records.keySet().stream().filter(hash -> hash.startsWith(prefix)).limit(limit).toList();
+  }
+
+  @Override
+  public byte @Nullable [] get(@NotNull String hash) {
+    return records.get(hash);
+  }
+
+  @Override
+  public void write(@NotNull String hash, byte @NotNull [] data) {
+    records.putIfAbsent(hash, data);
+  }
+
+  @Override
+  public void replace(@NotNull String hash, byte @NotNull [] data) {
+    records.put(hash, data);
+  }
+
+  @Override
+  public boolean delete(@NotNull String hash) {
+    return records.remove(hash) != null;
+  }
+
+  @Override
+  public void close() {
+    records.clear();
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A reference to a stack of captchacards, stored in place of a serialized card.
+ *
+ * <p>A serialized card includes its rendered name and lore, so storing one ties the outer card's
+ * hash to the current language file and item format. A reference depends only on the inner hash.
+ * <pre>
+ *   UTF    marker
+ *   UTF    inner hash
+ *   int    amount
+ * </pre>
+ *
+ * @param hash the hash of the inner card
+ * @param amount the number of inner cards
+ */
+public record NestedReference(@NotNull String hash, int amount) {
+
+  // Keeps encoded references distinct from serialized items, which are hashed the same way.
+  private static final String MARKER = "captcha:nested";
+
+  /**
+   * Decode a reference.
+   *
+   * @param data the encoded reference
+   * @return the decoded reference
+   * @throws IOException if the data is malformed
+   */
+  public static @NotNull NestedReference decode(byte @NotNull [] data) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    String marker = in.readUTF();
+    if (!MARKER.equals(marker)) {
+      throw new IOException("Invalid nested reference marker " + marker);
+    }
+    return new NestedReference(in.readUTF(), in.readInt());
+  }
+
+  /**
+   * Encode the reference. The encoding is stable and is used to calculate the outer card's hash.
+   *
+   * @return the encoded reference
+   */
+  @Contract(pure = true)
+  public byte @NotNull [] encode() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(MARKER.length() + hash.length() + 8);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(MARKER);
+      out.writeUTF(hash);
+      out.writeInt(amount);
+    } catch (IOException e) {
+      // In-memory streams do not throw.
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+}
@@ -0,0 +1,170 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A bounded pool of database readers.
+ *
+ * <p>Readers are borrowed for a single operation rather than bound to a thread. Reads arrive from
+ * pools whose threads come and go, so per-thread readers would accumulate until the store closed.
+ * Once the limit is reached, borrowers wait a limited time for a reader to be returned.
+ *
+ * @param <T> the type of reader
+ */
+final class ReaderPool<T> {
+
+  private final @NotNull ReaderFactory<T> factory;
+  private final @NotNull Consumer<T> closer;
+  private final int maxReaders;
+  private final long maxWaitNanos;
+  private final @NotNull Deque<T> idle = new ArrayDeque<>();
+  private int open;
+  private boolean closed;
+
+  /**
+   * Create a new pool.
+   *
+   * @param factory the source of new readers
+   * @param closer the method releasing a reader's resources
+   * @param maxReaders the maximum number of readers open at once
+   * @param maxWait the longest a borrower may wait for a reader
+   */
+  ReaderPool(
+      @NotNull ReaderFactory<T> factory,
+      @NotNull Consumer<T> closer,
+      int maxReaders,
+      @NotNull Duration maxWait
+  ) {
+    this.factory = factory;
+    this.closer = closer;
+    this.maxReaders = maxReaders;
+    this.maxWaitNanos = maxWait.toNanos();
+  }
+
+  /**
+   * Borrow a reader, opening a new one if none are idle and the limit has not been reached. The
+   * reader must be returned with {@link #release(Object)} or {@link #discard(Object)}.
+   *
+   * @return the reader
+   * @throws SQLException if the pool is closed, no reader is free in time, or a reader cannot be
+   *     opened
+   */
+  @NotNull T borrow() throws SQLException {
+    long deadline = System.nanoTime() + maxWaitNanos;
+    synchronized (this) {
+      while (true) {
+        if (closed) {
+          throw new SQLException("Store is closed");
+        }
+        T reader = idle.pollFirst();
+        if (reader != null) {
+          return reader;
+        }
+        if (open < maxReaders) {
+          ++open;
+          break;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          throw new SQLException("Timed out waiting for a reader");
+        }
+        try {
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted waiting for a reader", e);
+        }
+      }
+    }
+
+    // Opening may be slow, so it is done without blocking other borrowers.
+    try {
+      return factory.open();
+    } catch (SQLException | RuntimeException e) {
+      synchronized (this) {
+        --open;
+        notify();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Return a healthy reader for reuse.
+   *
+   * @param reader the reader
+   */
+  void release(@NotNull T reader) {
+    synchronized (this) {
+      if (!closed) {
+        // Most recently used first, so that spare readers go unused rather than stale.
+        idle.addFirst(reader);
+        notify();
+        return;
+      }
+      --open;
+    }
+    closer.accept(reader);
+  }
+
+  /**
+   * Close a broken reader, making room for a new one.
+   *
+   * @param reader the reader
+   */
+  void discard(@NotNull T reader) {
+    synchronized (this) {
+      --open;
+      notify();
+    }
+    closer.accept(reader);
+  }
+
+  /**
+   * Close all idle readers. Readers in use are closed when they are returned.
+   */
+  void close() {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    T reader;
+    while ((reader = poll()) != null) {
+      closer.accept(reader);
+    }
+  }
+
+  private synchronized T poll() {
+    T reader = idle.pollFirst();
+    if (reader != null) {
+      --open;
+    }
+    return reader;
+  }
+
+  /**
+   * A source of new readers.
+   *
+   * @param <T> the type of reader
+   */
+  @FunctionalInterface
+  interface ReaderFactory<T> {
+
+    /**
+     * Open a new reader.
+     *
+     * @return the reader
+     * @throws SQLException if the reader cannot be opened
+     */
+    @NotNull T open() throws SQLException;
+
+  }
+
+}
@@ -0,0 +1,30 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * A destination for serialized captchacard contents.
+ */
+@FunctionalInterface
+public interface RecordSink {
+
+  /**
+   * Write a record. Records are immutable once written, so implementations may ignore writes for
+   * hashes that are already stored.
+   *
+   * @param hash the hash of the record
+   * @param data the serialized record
+   * @throws IOException if the record cannot be written
+   */
+  void write(@NotNull String hash, byte @NotNull [] data) throws IOException;
+
+  /**
+   * Make all previously written records durable.
+   *
+   * @throws IOException if the records cannot be synced
+   */
+  default void sync() throws IOException {}
+
+}
@@ -0,0 +1,322 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Counts of live cards per hash, used to find records that no card refers to any longer.
+ *
+ * <p>Only hashes first stored while counting was active are tracked. Cards issued before then are
+ * unaccounted for, so untracked hashes are never reported as unreferenced. Cards packed into other
+ * cards still count as live; they return when the outer card is opened.
+ *
+ * <p>Changes are buffered in memory and appended to a log in batches. The log is periodically
+ * folded into a snapshot. Changes made shortly before a crash may be lost, so every count restarts
+ * its grace period on load.
+ */
+public final class ReferenceCounts {
+
+  private static final String SNAPSHOT = "references.dat";
+  private static final String LOG = "references.log";
+  private static final long LOG_COMPACT_SIZE = 4L * 1024L * 1024L;
+  private static final byte OP_TRACK = 1;
+  private static final byte OP_ADJUST = 2;
+  private static final byte OP_UNTRACK = 3;
+
+  private final @NotNull Path snapshot;
+  private final @NotNull Path log;
+  private final @NotNull Logger logger;
+  private final @NotNull Map<String, Counter> counts = new ConcurrentHashMap<>();
+  private final @NotNull Set<String> pendingTrack = ConcurrentHashMap.newKeySet();
+  private final @NotNull Map<String, Long> pendingDeltas = new ConcurrentHashMap<>();
+  private final @NotNull Set<String> pendingUntrack = ConcurrentHashMap.newKeySet();
+  // Changes share the lock; flushing holds it exclusively so a snapshot never includes unlogged changes.
+  private final @NotNull ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+  public ReferenceCounts(@NotNull Path directory, @NotNull Logger logger) {
+    this.snapshot = directory.resolve(SNAPSHOT);
+    this.log = directory.resolve(LOG);
+    this.logger = logger;
+  }
+
+  /**
+   * Load the snapshot and replay the log.
+   *
+   * @throws IOException if the counts cannot be read
+   */
+  public synchronized void load() throws IOException {
+    long now = System.currentTimeMillis();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+      int size = in.readInt();
+      for (int i = 0; i < size; ++i) {
+        counts.put(in.readUTF(), new Counter(in.readLong(), now));
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing counted yet.
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+      while (true) {
+        byte op = in.readByte();
+        String hash = in.readUTF();
+        switch (op) {
+          case OP_TRACK -> counts.putIfAbsent(hash, new Counter(0, now));
+          case OP_ADJUST -> {
+            long delta = in.readLong();
+            Counter counter = counts.get(hash);
+            if (counter != null) {
+              counter.adjust(delta, now);
+            }
+          }
+          case OP_UNTRACK -> counts.remove(hash);
+          default -> throw new IOException("Unknown reference log operation " + op);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing logged since the last snapshot.
+    } catch (EOFException | UTFDataFormatException e) {
+      // End of log. A torn trailing entry is an unsynced batch and is safely dropped.
+    }
+
+    // Counts restart their grace period on load, so downtime never counts towards collection.
+    for (Counter counter : counts.values()) {
+      counter.touch(now);
+    }
+  }
+
+  /**
+   * Begin tracking a newly stored hash with no cards issued.
+   *
+   * @param hash the hash
+   */
+  public void track(@NotNull String hash) {
+    flushLock.readLock().lock();
+    try {
+      if (counts.putIfAbsent(hash, new Counter(0, System.currentTimeMillis())) == null) {
+        pendingUntrack.remove(hash);
+        pendingTrack.add(hash);
+      }
+    } finally {
+      flushLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Stop tracking a hash. Untracked hashes are never collected.
+   *
+   * @param hash the hash
+   */
+  public void untrack(@NotNull String hash) {
+    flushLock.readLock().lock();
+    try {
+      if (counts.remove(hash) != null) {
+        pendingTrack.remove(hash);
+        pendingDeltas.remove(hash);
+        pendingUntrack.add(hash);
+      }
+    } finally {
+      flushLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adjust the number of live cards for a hash. Untracked hashes are ignored.
+   *
+   * @param hash the hash
+   * @param delta the change in the number of cards
+   */
+  public void adjust(@NotNull String hash, long delta) {
+    flushLock.readLock().lock();
+    try {
+      Counter counter = counts.get(hash);
+      if (counter == null || delta == 0) {
+        return;
+      }
+      counter.adjust(delta, System.currentTimeMillis());
+      pendingDeltas.merge(hash, delta, Long::sum);
+    } finally {
+      flushLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Restart the grace period of a hash if it is unreferenced, i.e. because it is about to be issued.
+   *
+   * @param hash the hash
+   */
+  public void touch(@NotNull String hash) {
+    Counter counter = counts.get(hash);
+    if (counter != null) {
+      counter.touch(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Check if a hash is tracked and has had no live cards since before a point in time.
+   *
+   * @param hash the hash
+   * @param before the time in milliseconds since the epoch
+   * @return true if the hash is unreferenced
+   */
+  public boolean isUnreferenced(@NotNull String hash, long before) {
+    Counter counter = counts.get(hash);
+    return counter != null && counter.isUnreferenced(before);
+  }
+
+  /**
+   * Get all tracked hashes that have had no live cards since before a point in time.
+   *
+   * @param before the time in milliseconds since the epoch
+   * @return the unreferenced hashes
+   */
+  public @NotNull List<String> getUnreferenced(long before) {
+    List<String> unreferenced = new ArrayList<>();
+    counts.forEach((hash, counter) -> {
+      if (counter.isUnreferenced(before)) {
+        unreferenced.add(hash);
+      }
+    });
+    return unreferenced;
+  }
+
+  /**
+   * Get the number of tracked hashes.
+   *
+   * @return the number of tracked hashes
+   */
+  public int size() {
+    return counts.size();
+  }
+
+  /**
+   * Append buffered changes to the log, folding the log into a new snapshot once it grows large.
+   *
+   * @throws IOException if the changes cannot be written
+   */
+  public void flush() throws IOException {
+    flushLock.writeLock().lock();
+    try {
+      flushPending();
+    } finally {
+      flushLock.writeLock().unlock();
+    }
+  }
+
+  private void flushPending() throws IOException {
+    List<String> tracked = drain(pendingTrack);
+    Map<String, Long> deltas = new HashMap<>(pendingDeltas);
+    pendingDeltas.clear();
+    deltas.values().removeIf(delta -> delta == 0);
+    List<String> untracked = drain(pendingUntrack);
+
+    if (!tracked.isEmpty() || !deltas.isEmpty() || !untracked.isEmpty()) {
+      try (FileChannel channel = FileChannel.open(
+          log,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND)) {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        for (String hash : tracked) {
+          out.writeByte(OP_TRACK);
+          out.writeUTF(hash);
+        }
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+          out.writeByte(OP_ADJUST);
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue());
+        }
+        for (String hash : untracked) {
+          out.writeByte(OP_UNTRACK);
+          out.writeUTF(hash);
+        }
+        out.flush();
+        channel.force(false);
+      }
+    }
+
+    if (Files.exists(log) && Files.size(log) >= LOG_COMPACT_SIZE) {
+      writeSnapshot();
+    }
+  }
+
+  private void writeSnapshot() throws IOException {
+    Path temp = snapshot.resolveSibling(SNAPSHOT + ".tmp");
+    Map<String, Counter> copy = new HashMap<>(counts);
+    try (OutputStream stream = Files.newOutputStream(temp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+      out.writeInt(copy.size());
+      for (Map.Entry<String, Counter> entry : copy.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeLong(entry.getValue().get());
+      }
+    }
+    Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.deleteIfExists(log);
+    logger.fine(() -> "Wrote snapshot of " + copy.size() + " card reference counts.");
+  }
+
+  private static @NotNull List<String> drain(@NotNull Set<String> pending) {
+    List<String> drained = new ArrayList<>(pending);
+    pending.clear();
+    return drained;
+  }
+
+  private static final class Counter {
+
+    private long count;
+    private long zeroSince;
+
+    private Counter(long count, long now) {
+      this.count = count;
+      this.zeroSince = now;
+    }
+
+    private synchronized long get() {
+      return count;
+    }
+
+    private synchronized void adjust(long delta, long now) {
+      boolean wasReferenced = count > 0;
+      count += delta;
+      if (wasReferenced && count <= 0) {
+        zeroSince = now;
+      }
+    }
+
+    private synchronized void touch(long now) {
+      if (count <= 0) {
+        zeroSince = now;
+      }
+    }
+
+    private synchronized boolean isUnreferenced(long before) {
+      return count <= 0 && zeroSince < before;
+    }
+
+  }
+
+}
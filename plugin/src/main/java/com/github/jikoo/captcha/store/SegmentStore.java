@@ -0,0 +1,652 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only record store split across segment files.
+ *
+ * <p>Each record is laid out as follows:
+ * <pre>
+ *   int    magic
+ *   short  hash length
+ *   int    data length
+ *   byte[] hash (UTF-8)
+ *   byte[] data
+ *   int    CRC32 of all preceding bytes in the record
+ * </pre>
+ *
+ * <p>Deleted records are marked by a tombstone: a record with a distinct magic and no data. A
+ * tombstone is carried forward by compaction for as long as an older segment may still hold the
+ * record it deletes.
+ *
+ * <p>The hash to location index is held in memory and rebuilt by scanning the segments on open.
+ * Corrupt data is skipped by searching for the next intact record. A torn or corrupt record at the
+ * tail of the newest segment with no intact record after it is assumed to be an interrupted write
+ * and is truncated. Segments whose live data falls below a threshold can be compacted by copying
+ * their live records into the active segment, unless they contain corrupt data.
+ */
+public class SegmentStore implements CaptchaStore {
+
+  private static final int MAGIC = 0xCA97C4A0;
+  private static final int TOMBSTONE_MAGIC = 0xCA97C4DE;
+  private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+  private static final int TRAILER_SIZE = Integer.BYTES;
+  private static final int MAX_HASH_LENGTH = 256;
+  private static final String EXTENSION = ".seg";
+  private static final Comparator<Location> LOCATION_ORDER =
+      Comparator.comparingInt(Location::segment).thenComparingLong(Location::offset);
+
+  private final @NotNull Path directory;
+  private final long maxSegmentSize;
+  private final @NotNull Logger logger;
+  private final @NotNull Map<String, Location> index = new ConcurrentHashMap<>();
+  private final @NotNull Map<String, Location> tombstones = new ConcurrentHashMap<>();
+  private final @NotNull NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+  private final @NotNull ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+  private final @NotNull Set<Segment> unsynced = new HashSet<>();
+  private Segment active;
+
+  public SegmentStore(@NotNull Path directory, long maxSegmentSize, @NotNull Logger logger) {
+    this.directory = directory;
+    this.maxSegmentSize = maxSegmentSize;
+    this.logger = logger;
+  }
+
+  /**
+   * Open all existing segments and rebuild the index.
+   *
+   * @throws IOException if the store cannot be opened
+   */
+  @Override
+  public synchronized void open() throws IOException {
+    Files.createDirectories(directory);
+
+    List<Integer> ids = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        try {
+          ids.add(Integer.parseInt(name.substring(0, name.length() - EXTENSION.length())));
+        } catch (NumberFormatException e) {
+          logger.warning(() -> "Ignoring unknown segment file " + name);
+        }
+      }
+    }
+    ids.sort(null);
+
+    for (int i = 0; i < ids.size(); ++i) {
+      Segment segment = openSegment(ids.get(i));
+      segments.put(segment.id, segment);
+      scan(segment, i == ids.size() - 1);
+    }
+
+    if (segments.isEmpty()) {
+      active = openSegment(1);
+      segments.put(active.id, active);
+    } else {
+      active = segments.lastEntry().getValue();
+    }
+  }
+
+  private @NotNull Segment openSegment(int id) throws IOException {
+    Path path = directory.resolve(String.format("%08d%s", id, EXTENSION));
+    FileChannel channel = FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+    );
+    return new Segment(id, path, channel);
+  }
+
+  private void scan(@NotNull Segment segment, boolean tail) throws IOException {
+    long size = segment.channel.size();
+    long position = 0;
+    while (true) {
+      long end = scanRun(segment, position, size);
+      if (end >= size) {
+        segment.size = end;
+        return;
+      }
+
+      // Skip past the damage to the next intact record rather than giving up on the segment.
+      long next = findNextRecord(segment, end + 1, size);
+      if (next < 0) {
+        segment.size = end;
+        if (tail) {
+          // An interrupted write. Discard the partial record so appends start from a clean offset.
+          long lost = size - end;
+          logger.warning(() -> "Truncating " + lost + " bytes of incomplete data from " + segment.path.getFileName());
+          segment.channel.truncate(end);
+          segment.channel.force(true);
+        } else {
+          segment.damaged = true;
+          logger.warning(() -> "Corrupt data in " + segment.path.getFileName() + " from offset " + end
+              + " to end of segment, segment will not be compacted.");
+        }
+        return;
+      }
+
+      segment.damaged = true;
+      logger.warning(() -> "Skipped " + (next - end) + " bytes of corrupt data in " + segment.path.getFileName()
+          + " at offset " + end + ", segment will not be compacted.");
+      position = next;
+    }
+  }
+
+  /**
+   * Index consecutive intact records starting at a position.
+   *
+   * @return the position after the last intact record
+   */
+  private long scanRun(@NotNull Segment segment, long position, long size) throws IOException {
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(segment.channel.position(position)), 1 << 16));
+    try {
+      while (position < size) {
+        int magic = in.readInt();
+        int hashLength = in.readUnsignedShort();
+        int dataLength = in.readInt();
+        if (!isValidHeader(magic, hashLength, dataLength, position, size)) {
+          break;
+        }
+
+        byte[] hashBytes = new byte[hashLength];
+        in.readFully(hashBytes);
+        byte[] data = new byte[dataLength];
+        in.readFully(data);
+        if (checksum(magic, hashBytes, data) != in.readInt()) {
+          break;
+        }
+
+        String hash = new String(hashBytes, StandardCharsets.UTF_8);
+        Location location = new Location(segment.id, position, hashLength, dataLength);
+        // Superseded records and tombstones are dead space.
+        if (magic == TOMBSTONE_MAGIC) {
+          release(index.remove(hash));
+          release(tombstones.put(hash, location));
+        } else {
+          release(index.put(hash, location));
+          release(tombstones.remove(hash));
+        }
+        segment.live.addAndGet(location.recordLength());
+        position += location.recordLength();
+      }
+    } catch (EOFException e) {
+      // Record extends past the end of the segment.
+    }
+    return position;
+  }
+
+  /**
+   * Find the next intact record at or after a position.
+   *
+   * @return the position of the record or -1 if there is none
+   */
+  private long findNextRecord(@NotNull Segment segment, long from, long size) throws IOException {
+    ByteBuffer window = ByteBuffer.allocate(1 << 16);
+    long windowStart = from;
+    while (windowStart + HEADER_SIZE + TRAILER_SIZE <= size) {
+      window.clear();
+      readFully(segment, window, windowStart, (int) Math.min(window.capacity(), size - windowStart));
+      window.flip();
+      // Candidates must have a complete magic in the window; the overlap covers the rest.
+      int last = window.limit() - Integer.BYTES;
+      for (int i = 0; i <= last; ++i) {
+        int magic = window.getInt(i);
+        if ((magic == MAGIC || magic == TOMBSTONE_MAGIC) && isIntactRecord(segment, windowStart + i, size)) {
+          return windowStart + i;
+        }
+      }
+      if (windowStart + window.limit() >= size) {
+        break;
+      }
+      windowStart += last + 1;
+    }
+    return -1;
+  }
+
+  private boolean isIntactRecord(@NotNull Segment segment, long position, long size) throws IOException {
+    if (position + HEADER_SIZE + TRAILER_SIZE > size) {
+      return false;
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(segment, header, position, HEADER_SIZE);
+    header.flip();
+    int magic = header.getInt();
+    int hashLength = Short.toUnsignedInt(header.getShort());
+    int dataLength = header.getInt();
+    if (!isValidHeader(magic, hashLength, dataLength, position, size)) {
+      return false;
+    }
+
+    ByteBuffer body = ByteBuffer.allocate(hashLength + dataLength + TRAILER_SIZE);
+    readFully(segment, body, position + HEADER_SIZE, body.capacity());
+    byte[] hashBytes = new byte[hashLength];
+    byte[] data = new byte[dataLength];
+    body.flip().get(hashBytes).get(data);
+    return checksum(magic, hashBytes, data) == body.getInt();
+  }
+
+  private static void readFully(
+      @NotNull Segment segment,
+      @NotNull ByteBuffer buffer,
+      long position,
+      int length
+  ) throws IOException {
+    buffer.limit(buffer.position() + length);
+    long start = position - buffer.position();
+    while (buffer.hasRemaining()) {
+      if (segment.channel.read(buffer, start + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of " + segment.path.getFileName());
+      }
+    }
+  }
+
+  private static boolean isValidHeader(int magic, int hashLength, int dataLength, long position, long size) {
+    boolean tombstone = magic == TOMBSTONE_MAGIC;
+    return (magic == MAGIC || tombstone) && hashLength > 0 && hashLength <= MAX_HASH_LENGTH
+        && dataLength >= 0 && (!tombstone || dataLength == 0)
+        && position + HEADER_SIZE + hashLength + dataLength + TRAILER_SIZE <= size;
+  }
+
+  private static int checksum(int magic, byte @NotNull [] hashBytes, byte @NotNull [] data) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putShort((short) hashBytes.length).putInt(data.length).flip());
+    crc.update(hashBytes);
+    crc.update(data);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Check if a record is stored.
+   *
+   * @param hash the hash of the record
+   * @return true if the record is stored
+   */
+  @Override
+  public boolean contains(@NotNull String hash) {
+    return index.containsKey(hash);
+  }
+
+  /**
+   * Get the number of records stored.
+   *
+   * @return the number of records
+   */
+  @Override
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Get a view of all stored hashes.
+   *
+   * @return the stored hashes
+   */
+  @Override
+  public @NotNull Set<String> keys() {
+    return index.keySet();
+  }
+
+  /**
+   * Get stored hashes starting with a prefix. The index is held in memory, so this never touches
+   * the disk.
+   *
+   * @param prefix the prefix
+   * @param limit the maximum number of hashes to return
+   * @return up to the limit of matching hashes
+   */
+  @Override
+  public @NotNull List<String> keys(@NotNull String prefix, int limit) {
+    return index.keySet().stream().filter(hash -> hash.startsWith(prefix)).limit(limit).toList();
+  }
+
+  /**
+   * Read a record.
+   *
+   * @param hash the hash of the record
+   * @return the record data or {@code null} if the record is not stored
+   * @throws IOException if the record cannot be read
+   */
+  @Override
+  public byte @Nullable [] get(@NotNull String hash) throws IOException {
+    segmentLock.readLock().lock();
+    try {
+      Location location = index.get(hash);
+      return location == null ? null : read(hash, location);
+    } finally {
+      segmentLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Read many records in a single pass. Records are read in segment and offset order so that
+   * access is as sequential as possible.
+   *
+   * @param hashes the hashes of the records
+   * @return the record data by hash, excluding records that are not stored
+   * @throws IOException if a record cannot be read
+   */
+  @Override
+  public @NotNull Map<String, byte[]> getAll(@NotNull Collection<String> hashes) throws IOException {
+    segmentLock.readLock().lock();
+    try {
+      List<Map.Entry<String, Location>> locations = new ArrayList<>(hashes.size());
+      for (String hash : hashes) {
+        Location location = index.get(hash);
+        if (location != null) {
+          locations.add(Map.entry(hash, location));
+        }
+      }
+      locations.sort(Map.Entry.comparingByValue(LOCATION_ORDER));
+
+      Map<String, byte[]> records = new HashMap<>();
+      for (Map.Entry<String, Location> entry : locations) {
+        byte[] data = read(entry.getKey(), entry.getValue());
+        if (data != null) {
+          records.put(entry.getKey(), data);
+        }
+      }
+      return records;
+    } finally {
+      segmentLock.readLock().unlock();
+    }
+  }
+
+  private byte @Nullable [] read(@NotNull String hash, @NotNull Location location) throws IOException {
+    Segment segment = segments.get(location.segment());
+    if (segment == null) {
+      return null;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(location.dataLength());
+    long position = location.dataOffset();
+    while (buffer.hasRemaining()) {
+      int read = segment.channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException("Record " + hash + " extends past end of " + segment.path.getFileName());
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Append a record if it is not already stored.
+   *
+   * @param hash the hash of the record
+   * @param data the record data
+   * @throws IOException if the record cannot be written
+   */
+  @Override
+  public synchronized void write(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    if (index.containsKey(hash)) {
+      return;
+    }
+    append(hash, data);
+  }
+
+  /**
+   * Append a record, superseding any existing record for the same hash. The superseded record is
+   * reclaimed by compaction.
+   *
+   * @param hash the hash of the record
+   * @param data the record data
+   * @throws IOException if the record cannot be written
+   */
+  @Override
+  public synchronized void replace(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    append(hash, data);
+    sync();
+  }
+
+  /**
+   * Append many records, superseding any existing records for the same hashes, with a single sync.
+   *
+   * @param records the record data by hash
+   * @throws IOException if the records cannot be written
+   */
+  @Override
+  public synchronized void replaceAll(@NotNull Map<String, byte[]> records) throws IOException {
+    if (records.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+      append(entry.getKey(), entry.getValue());
+    }
+    sync();
+  }
+
+  /**
+   * Delete a record. The deletion is not durable until the store is {@link #sync() synced}.
+   *
+   * @param hash the hash of the record
+   * @return true if the record was stored
+   * @throws IOException if the deletion cannot be written
+   */
+  @Override
+  public synchronized boolean delete(@NotNull String hash) throws IOException {
+    if (!index.containsKey(hash)) {
+      return false;
+    }
+    appendTombstone(hash);
+    return true;
+  }
+
+  private void appendTombstone(@NotNull String hash) throws IOException {
+    Location location = append(TOMBSTONE_MAGIC, hash, new byte[0]);
+    release(index.remove(hash));
+    release(tombstones.put(hash, location));
+  }
+
+  private void append(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    Location location = append(MAGIC, hash, data);
+    release(index.put(hash, location));
+    release(tombstones.remove(hash));
+  }
+
+  private @NotNull Location append(int magic, @NotNull String hash, byte @NotNull [] data) throws IOException {
+    byte[] hashBytes = hash.getBytes(StandardCharsets.UTF_8);
+    if (hashBytes.length == 0 || hashBytes.length > MAX_HASH_LENGTH) {
+      throw new IOException("Invalid hash length for " + hash);
+    }
+
+    if (active.size > 0 && active.size >= maxSegmentSize) {
+      roll();
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + hashBytes.length + data.length + TRAILER_SIZE);
+    buffer.putInt(magic).putShort((short) hashBytes.length).putInt(data.length).put(hashBytes).put(data);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc.getValue()).flip();
+
+    long position = active.size;
+    while (buffer.hasRemaining()) {
+      active.channel.write(buffer, position + buffer.position());
+    }
+    active.size = position + buffer.limit();
+    active.live.addAndGet(buffer.limit());
+    unsynced.add(active);
+
+    return new Location(active.id, position, hashBytes.length, data.length);
+  }
+
+  private void release(@Nullable Location previous) {
+    if (previous != null) {
+      Segment previousSegment = segments.get(previous.segment());
+      if (previousSegment != null) {
+        previousSegment.live.addAndGet(-previous.recordLength());
+      }
+    }
+  }
+
+  private void roll() throws IOException {
+    Segment next = openSegment(active.id + 1);
+    segments.put(next.id, next);
+    active = next;
+  }
+
+  /**
+   * Force all appended records to disk.
+   *
+   * @throws IOException if the records cannot be synced
+   */
+  @Override
+  public synchronized void sync() throws IOException {
+    for (Segment segment : unsynced) {
+      segment.channel.force(false);
+    }
+    unsynced.clear();
+  }
+
+  /**
+   * Rewrite the live records of sealed segments whose live data has fallen below a threshold, then
+   * delete the old segments.
+   *
+   * @param liveThreshold the fraction of live data below which a segment is compacted
+   * @return the number of segments compacted
+   * @throws IOException if compaction fails
+   */
+  @Override
+  public synchronized int compact(double liveThreshold) throws IOException {
+    List<Segment> candidates = new ArrayList<>();
+    for (Segment segment : segments.values()) {
+      // Damaged segments may hold records the scan could not reach, so they are never discarded.
+      if (segment != active && !segment.damaged && segment.size > 0
+          && segment.live.get() < segment.size * liveThreshold) {
+        candidates.add(segment);
+      }
+    }
+
+    if (candidates.isEmpty()) {
+      return 0;
+    }
+
+    Set<Integer> removed = new HashSet<>();
+    for (Segment segment : candidates) {
+      removed.add(segment.id);
+    }
+
+    for (Segment segment : candidates) {
+      for (Map.Entry<String, Location> entry : index.entrySet()) {
+        if (entry.getValue().segment() == segment.id) {
+          byte[] data = get(entry.getKey());
+          if (data != null) {
+            append(entry.getKey(), data);
+          }
+        }
+      }
+    }
+
+    for (Map.Entry<String, Location> entry : new ArrayList<>(tombstones.entrySet())) {
+      int tombstoneSegment = entry.getValue().segment();
+      if (!removed.contains(tombstoneSegment)) {
+        continue;
+      }
+      // A tombstone is only needed while an older, surviving segment may hold the deleted record.
+      boolean shadowsOlder = false;
+      for (int id : segments.headMap(tombstoneSegment, false).keySet()) {
+        if (!removed.contains(id)) {
+          shadowsOlder = true;
+          break;
+        }
+      }
+      if (shadowsOlder) {
+        appendTombstone(entry.getKey());
+      } else {
+        tombstones.remove(entry.getKey());
+      }
+    }
+
+    // Copied records must be durable before their originals are removed.
+    sync();
+
+    segmentLock.writeLock().lock();
+    try {
+      for (Segment segment : candidates) {
+        segments.remove(segment.id);
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+      }
+    } finally {
+      segmentLock.writeLock().unlock();
+    }
+
+    return candidates.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    sync();
+    segmentLock.writeLock().lock();
+    try {
+      for (Segment segment : segments.values()) {
+        segment.channel.close();
+      }
+      segments.clear();
+    } finally {
+      segmentLock.writeLock().unlock();
+    }
+  }
+
+  private record Location(int segment, long offset, int hashLength, int dataLength) {
+
+    long dataOffset() {
+      return offset + HEADER_SIZE + hashLength;
+    }
+
+    long recordLength() {
+      return (long) HEADER_SIZE + hashLength + dataLength + TRAILER_SIZE;
+    }
+
+  }
+
+  private static final class Segment {
+
+    private final int id;
+    private final @NotNull Path path;
+    private final @NotNull FileChannel channel;
+    private final @NotNull AtomicLong live = new AtomicLong();
+    private volatile long size;
+    private volatile boolean damaged;
+
+    private Segment(int id, @NotNull Path path, @NotNull FileChannel channel) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+    }
+
+  }
+
+}
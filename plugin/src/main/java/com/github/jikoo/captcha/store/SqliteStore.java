@@ -0,0 +1,397 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A store backed by an embedded SQLite database.
+ *
+ * <p>The database runs in write-ahead log mode, so readers never block the writer or each other.
+ * Reads borrow read-only connections from a small pool. All modifications go through a single
+ * connection in one open transaction, with inserts sent in batches, and are committed on
+ * {@link #sync()}. Until then, readers are served uncommitted changes from memory.
+ *
+ * <p>The SQLite JDBC driver is bundled with the server.
+ */
+public class SqliteStore implements CaptchaStore {
+
+  private static final int BATCH_SIZE = 500;
+  private static final int BUSY_TIMEOUT_MILLIS = 5_000;
+  private static final int MAX_READERS = 4;
+  // Stays below the historical limit on bound parameters per statement.
+  private static final int MAX_PARAMETERS = 900;
+  // Marks an uncommitted deletion; compared by identity.
+  private static final byte[] DELETED = new byte[0];
+
+  private final @NotNull Path file;
+  private final @NotNull Logger logger;
+  private final @NotNull Map<String, byte[]> uncommitted = new ConcurrentHashMap<>();
+  private final @NotNull ReaderPool<Reader> readers = new ReaderPool<>(
+      () -> new Reader(connect()),
+      Reader::close,
+      MAX_READERS,
+      Duration.ofMillis(BUSY_TIMEOUT_MILLIS));
+  private Connection writeConnection;
+  private PreparedStatement insert;
+  private PreparedStatement stored;
+  private int batched;
+
+  public SqliteStore(@NotNull Path file, @NotNull Logger logger) {
+    this.file = file;
+    this.logger = logger;
+  }
+
+  @Override
+  public synchronized void open() throws IOException {
+    try {
+      Path parent = file.getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      writeConnection = connect();
+      try (Statement statement = writeConnection.createStatement()) {
+        statement.execute("PRAGMA journal_mode=WAL");
+        statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+        // Commits are already batched, so each can afford to be fully durable.
+        statement.execute("PRAGMA synchronous=FULL");
+        statement.execute(
+            "CREATE TABLE IF NOT EXISTS records (hash TEXT PRIMARY KEY, data BLOB NOT NULL) WITHOUT ROWID");
+      }
+      writeConnection.setAutoCommit(false);
+      insert = writeConnection.prepareStatement("INSERT OR IGNORE INTO records (hash, data) VALUES (?, ?)");
+      stored = writeConnection.prepareStatement("SELECT 1 FROM records WHERE hash = ?");
+    } catch (SQLException e) {
+      throw new IOException("Unable to open " + file, e);
+    }
+  }
+
+  private @NotNull Connection connect() throws SQLException {
+    return DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+  }
+
+  private <T> T read(@NotNull SqlFunction<Reader, T> function) throws SQLException {
+    Reader reader = readers.borrow();
+    try {
+      return function.apply(reader);
+    } finally {
+      readers.release(reader);
+    }
+  }
+
+  @Override
+  public boolean contains(@NotNull String hash) throws IOException {
+    byte[] pending = uncommitted.get(hash);
+    if (pending != null) {
+      return pending != DELETED;
+    }
+    try {
+      return read(reader -> {
+        reader.exists.setString(1, hash);
+        try (ResultSet result = reader.exists.executeQuery()) {
+          return result.next();
+        }
+      });
+    } catch (SQLException e) {
+      throw new IOException("Unable to check for record " + hash, e);
+    }
+  }
+
+  @Override
+  public synchronized int size() {
+    // The write connection sees its own uncommitted changes.
+    try (Statement statement = writeConnection.createStatement()) {
+      flushBatch();
+      try (ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM records")) {
+        return result.next() ? result.getInt(1) : 0;
+      }
+    } catch (SQLException e) {
+      throw new UncheckedIOException(new IOException("Unable to count records", e));
+    }
+  }
+
+  @Override
+  public synchronized @NotNull Set<String> keys() {
+    try (Statement statement = writeConnection.createStatement()) {
+      flushBatch();
+      Set<String> keys = new HashSet<>();
+      try (ResultSet result = statement.executeQuery("SELECT hash FROM records")) {
+        while (result.next()) {
+          keys.add(result.getString(1));
+        }
+      }
+      return keys;
+    } catch (SQLException e) {
+      throw new UncheckedIOException(new IOException("Unable to list records", e));
+    }
+  }
+
+  @Override
+  public @NotNull List<String> keys(@NotNull String prefix, int limit) throws IOException {
+    // Reads through the primary key index on a reader, so it never waits on or flushes writes.
+    try {
+      return read(reader -> {
+        try (PreparedStatement statement = reader.connection.prepareStatement(
+            "SELECT hash FROM records WHERE hash >= ? AND hash < ? ORDER BY hash LIMIT ?")) {
+          return selectPrefix(statement, prefix, limit);
+        }
+      });
+    } catch (SQLException e) {
+      throw new IOException("Unable to list records starting with " + prefix, e);
+    }
+  }
+
+  /**
+   * Select hashes starting with a prefix using a statement with parameters for the inclusive lower
+   * bound, the exclusive upper bound, and the limit.
+   *
+   * @param statement the statement
+   * @param prefix the prefix
+   * @param limit the maximum number of hashes to select
+   * @return the matching hashes
+   * @throws SQLException if the statement fails
+   */
+  static @NotNull List<String> selectPrefix(
+      @NotNull PreparedStatement statement,
+      @NotNull String prefix,
+      int limit
+  ) throws SQLException {
+    statement.setString(1, prefix);
+    // Hashes are ASCII, so the highest character bounds every possible continuation of the prefix.
+    statement.setString(2, prefix + Character.MAX_VALUE);
+    statement.setInt(3, limit);
+    List<String> hashes = new ArrayList<>();
+    try (ResultSet result = statement.executeQuery()) {
+      while (result.next()) {
+        hashes.add(result.getString(1));
+      }
+    }
+    return hashes;
+  }
+
+  @Override
+  public byte @Nullable [] get(@NotNull String hash) throws IOException {
+    byte[] pending = uncommitted.get(hash);
+    if (pending != null) {
+      return pending == DELETED ? null : pending;
+    }
+    try {
+      return read(reader -> {
+        reader.select.setString(1, hash);
+        try (ResultSet result = reader.select.executeQuery()) {
+          return result.next() ? result.getBytes(1) : null;
+        }
+      });
+    } catch (SQLException e) {
+      throw new IOException("Unable to read record " + hash, e);
+    }
+  }
+
+  @Override
+  public @NotNull Map<String, byte[]> getAll(@NotNull Collection<String> hashes) throws IOException {
+    Map<String, byte[]> records = new HashMap<>();
+    List<String> unread = new ArrayList<>(hashes.size());
+    for (String hash : hashes) {
+      byte[] pending = uncommitted.get(hash);
+      if (pending == null) {
+        unread.add(hash);
+      } else if (pending != DELETED) {
+        records.put(hash, pending);
+      }
+    }
+
+    try {
+      read(reader -> {
+        for (int start = 0; start < unread.size(); start += MAX_PARAMETERS) {
+          List<String> group = unread.subList(start, Math.min(unread.size(), start + MAX_PARAMETERS));
+          String parameters = String.join(",", Collections.nCopies(group.size(), "?"));
+          try (PreparedStatement statement = reader.connection.prepareStatement(
+              "SELECT hash, data FROM records WHERE hash IN (" + parameters + ")")) {
+            for (int i = 0; i < group.size(); ++i) {
+              statement.setString(i + 1, group.get(i));
+            }
+            try (ResultSet result = statement.executeQuery()) {
+              while (result.next()) {
+                records.put(result.getString(1), result.getBytes(2));
+              }
+            }
+          }
+        }
+        return null;
+      });
+    } catch (SQLException e) {
+      throw new IOException("Unable to read records", e);
+    }
+    return records;
+  }
+
+  @Override
+  public synchronized void write(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    byte[] pending = uncommitted.get(hash);
+    if (pending != null && pending != DELETED) {
+      return;
+    }
+    try {
+      // Readers are served uncommitted data first, so it must only ever hold what will be stored.
+      // Batched inserts are already pending, and anything flushed or deleted is visible here.
+      if (pending == null && isStored(hash)) {
+        return;
+      }
+      insert.setString(1, hash);
+      insert.setBytes(2, data);
+      insert.addBatch();
+      uncommitted.put(hash, data);
+      if (++batched >= BATCH_SIZE) {
+        flushBatch();
+      }
+    } catch (SQLException e) {
+      throw new IOException("Unable to write record " + hash, e);
+    }
+  }
+
+  private boolean isStored(@NotNull String hash) throws SQLException {
+    stored.setString(1, hash);
+    try (ResultSet result = stored.executeQuery()) {
+      return result.next();
+    }
+  }
+
+  @Override
+  public synchronized void replace(@NotNull String hash, byte @NotNull [] data) throws IOException {
+    replaceAll(Map.of(hash, data));
+  }
+
+  @Override
+  public synchronized void replaceAll(@NotNull Map<String, byte[]> records) throws IOException {
+    if (records.isEmpty()) {
+      return;
+    }
+    try (PreparedStatement statement = writeConnection.prepareStatement(
+        "INSERT OR REPLACE INTO records (hash, data) VALUES (?, ?)")) {
+      // Pending inserts must land first so that they cannot overwrite the replacement.
+      flushBatch();
+      for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+        statement.setString(1, entry.getKey());
+        statement.setBytes(2, entry.getValue());
+        statement.addBatch();
+        uncommitted.put(entry.getKey(), entry.getValue());
+      }
+      statement.executeBatch();
+    } catch (SQLException e) {
+      throw new IOException("Unable to replace records", e);
+    }
+    sync();
+  }
+
+  @Override
+  public synchronized boolean delete(@NotNull String hash) throws IOException {
+    try (PreparedStatement statement = writeConnection.prepareStatement("DELETE FROM records WHERE hash = ?")) {
+      flushBatch();
+      statement.setString(1, hash);
+      if (statement.executeUpdate() == 0) {
+        return false;
+      }
+      uncommitted.put(hash, DELETED);
+      return true;
+    } catch (SQLException e) {
+      throw new IOException("Unable to delete record " + hash, e);
+    }
+  }
+
+  private void flushBatch() throws SQLException {
+    if (batched > 0) {
+      insert.executeBatch();
+      batched = 0;
+    }
+  }
+
+  @Override
+  public synchronized void sync() throws IOException {
+    try {
+      flushBatch();
+      writeConnection.commit();
+    } catch (SQLException e) {
+      throw new IOException("Unable to commit records", e);
+    }
+    // Committed changes are now visible to readers.
+    uncommitted.clear();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      sync();
+    } finally {
+      readers.close();
+      try {
+        insert.close();
+        stored.close();
+        writeConnection.close();
+      } catch (SQLException e) {
+        logger.log(Level.WARNING, "Error closing card database", e);
+      }
+    }
+  }
+
+  /**
+   * A read-only connection and its prepared statements, used by one borrower at a time.
+   */
+  private final class Reader {
+
+    private final @NotNull Connection connection;
+    private final @NotNull PreparedStatement select;
+    private final @NotNull PreparedStatement exists;
+
+    private Reader(@NotNull Connection connection) throws SQLException {
+      this.connection = connection;
+      try {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("PRAGMA query_only=true");
+          statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+        }
+        this.select = connection.prepareStatement("SELECT data FROM records WHERE hash = ?");
+        this.exists = connection.prepareStatement("SELECT 1 FROM records WHERE hash = ?");
+      } catch (SQLException e) {
+        close();
+        throw e;
+      }
+    }
+
+    private void close() {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        logger.log(Level.FINE, "Error closing card database reader", e);
+      }
+    }
+
+  }
+
+  @FunctionalInterface
+  private interface SqlFunction<T, R> {
+    R apply(T value) throws SQLException;
+  }
+
+}
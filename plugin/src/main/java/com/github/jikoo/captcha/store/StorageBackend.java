@@ -0,0 +1,42 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * The available {@link CaptchaStore} implementations.
+ */
+public enum StorageBackend {
+
+  /** Append-only segment files. */
+  SEGMENT,
+  /** An embedded SQLite database. */
+  SQLITE,
+  /** Memory only; contents are lost on shutdown. */
+  MEMORY,
+  /** A SQL database shared by several servers. See {@link JdbcStore}. */
+  JDBC;
+
+  private static final String SQLITE_FILE = "captcha.db";
+
+  /**
+   * Create a local store using this backend.
+   *
+   * @param dataDir the directory to store data in
+   * @param maxSegmentSize the size in bytes after which a new segment is started, if applicable
+   * @param logger the logger used to report problems
+   * @return the unopened store
+   * @throws UnsupportedOperationException if the backend is not local
+   */
+  public @NotNull CaptchaStore create(@NotNull Path dataDir, long maxSegmentSize, @NotNull Logger logger) {
+    return switch (this) {
+      case SEGMENT -> new SegmentStore(dataDir, maxSegmentSize, logger);
+      case SQLITE -> new SqliteStore(dataDir.resolve(SQLITE_FILE), logger);
+      case MEMORY -> new MemoryStore();
+      case JDBC -> throw new UnsupportedOperationException("Shared storage requires connection settings");
+    };
+  }
+
+}
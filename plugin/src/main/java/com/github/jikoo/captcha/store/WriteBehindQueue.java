@@ -0,0 +1,186 @@
+package com.github.jikoo.captcha.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A write-behind queue moving record persistence off of the calling thread.
+ *
+ * <p>Records are held in memory until a dedicated I/O thread writes them to the {@link RecordSink}.
+ * Writes for the same hash are coalesced, and all records pending at flush time are written as a
+ * group followed by a single {@link RecordSink#sync()}.
+ *
+ * <p>If the queue grows beyond its maximum size, the enqueuing thread flushes the queue itself.
+ * This bounds memory usage when the sink cannot keep up at the cost of stalling producers. The same
+ * happens once the executor has been shut down, so no record is ever dropped.
+ *
+ * <p>If the sink fails, records stay queued and are retried with exponential backoff. Producers
+ * never flush while the sink is failing, as that would only stall them on the same failure.
+ */
+public class WriteBehindQueue {
+
+  private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final @NotNull Map<String, byte[]> pending = new ConcurrentHashMap<>();
+  private final @NotNull Object flushLock = new Object();
+  private final @NotNull AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final @NotNull AtomicInteger failures = new AtomicInteger();
+  private final @NotNull ScheduledExecutorService executor;
+  private final @NotNull RecordSink sink;
+  private final int maxPending;
+  private final long flushDelayMillis;
+  private final @NotNull Logger logger;
+
+  public WriteBehindQueue(
+      @NotNull ScheduledExecutorService executor,
+      @NotNull RecordSink sink,
+      int maxPending,
+      @NotNull Duration flushDelay,
+      @NotNull Logger logger
+  ) {
+    this.executor = executor;
+    this.sink = sink;
+    this.maxPending = maxPending;
+    this.flushDelayMillis = flushDelay.toMillis();
+    this.logger = logger;
+  }
+
+  /**
+   * Queue a record to be written.
+   *
+   * @param hash the hash of the record
+   * @param data the serialized record
+   */
+  public void enqueue(@NotNull String hash, byte @NotNull [] data) {
+    // Records are immutable, so an existing entry is already the same data.
+    if (pending.putIfAbsent(hash, data) != null) {
+      return;
+    }
+
+    // While the sink is failing, records are held in memory until the scheduled retry succeeds.
+    if (failures.get() > 0) {
+      return;
+    }
+
+    // Backpressure: if the I/O thread is falling behind, the producer does the work.
+    if (pending.size() > maxPending) {
+      flush();
+      return;
+    }
+
+    scheduleFlush(flushDelayMillis, true);
+  }
+
+  private void scheduleFlush(long delayMillis, boolean flushIfShutdown) {
+    if (!flushScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      executor.schedule(
+          () -> {
+            flushScheduled.set(false);
+            flush();
+          },
+          delayMillis,
+          TimeUnit.MILLISECONDS
+      );
+    } catch (RuntimeException e) {
+      flushScheduled.set(false);
+      // Executor is shut down. Write on the calling thread rather than dropping the record.
+      if (flushIfShutdown) {
+        flush();
+      }
+    }
+  }
+
+  /**
+   * Get a record that has not yet been written.
+   *
+   * @param hash the hash of the record
+   * @return the serialized record or {@code null} if no write is pending
+   */
+  public byte @Nullable [] getPending(@NotNull String hash) {
+    return pending.get(hash);
+  }
+
+  /**
+   * Get the number of records waiting to be written.
+   *
+   * @return the number of pending records
+   */
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   * Write all pending records. If any cannot be written, a retry is scheduled.
+   */
+  public void flush() {
+    synchronized (flushLock) {
+      if (pending.isEmpty()) {
+        return;
+      }
+
+      List<Map.Entry<String, byte[]>> batch = new ArrayList<>(pending.entrySet());
+      List<Map.Entry<String, byte[]>> written = new ArrayList<>(batch.size());
+      IOException failure = null;
+      for (Map.Entry<String, byte[]> entry : batch) {
+        try {
+          sink.write(entry.getKey(), entry.getValue());
+          written.add(entry);
+        } catch (IOException e) {
+          // Leave the record queued. It is still served from memory and will be retried.
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      }
+
+      try {
+        sink.sync();
+      } catch (IOException e) {
+        retryLater(batch.size(), batch.size(), e);
+        return;
+      }
+
+      // Only drop records once they are durable.
+      for (Map.Entry<String, byte[]> entry : written) {
+        pending.remove(entry.getKey(), entry.getValue());
+      }
+
+      if (failure != null) {
+        retryLater(batch.size() - written.size(), batch.size(), failure);
+      } else if (failures.getAndSet(0) > 0) {
+        logger.info("Card contents are being written again.");
+      }
+    }
+  }
+
+  private void retryLater(int failed, int total, @NotNull IOException cause) {
+    int attempt = failures.incrementAndGet();
+    long delay = Math.min(MAX_RETRY_DELAY_MILLIS, Math.max(1000L, flushDelayMillis) << Math.min(attempt - 1, 16));
+    // One message per flush, no matter how many records failed.
+    logger.log(
+        Level.WARNING,
+        String.format("Unable to write %d of %d card contents, retrying in %ds.", failed, total, delay / 1000),
+        cause);
+    // A flush that is already scheduled serves as the retry; if it fails too, it schedules another.
+    // Never flush directly from here, as a failing sink would recurse. Anything left is flushed on close.
+    scheduleFlush(delay, false);
+  }
+
+}
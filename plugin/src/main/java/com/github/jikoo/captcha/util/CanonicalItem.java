@@ -0,0 +1,160 @@
+package com.github.jikoo.captcha.util;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A normalized representation of an item used to identify it independent of serialization details.
+ *
+ * <p>Serialized items embed the data version, and component order within them is not guaranteed,
+ * so the same logical item may serialize differently after a server update. The canonical form
+ * consists only of the item type, amount, and component patch, with the entries of every compound
+ * sorted by key. Lists keep their order, as it is meaningful.
+ */
+public enum CanonicalItem {
+  ;
+
+  /**
+   * Encode an item in canonical form.
+   *
+   * @param item the item
+   * @return the canonical form of the item
+   */
+  @Contract(pure = true)
+  public static byte @NotNull [] encode(@NotNull ItemStack item) {
+    StringBuilder builder = new StringBuilder()
+        .append(item.getType().key().asString())
+        .append('\n')
+        .append(item.getAmount());
+
+    ItemMeta meta = item.hasItemMeta() ? item.getItemMeta() : null;
+    if (meta != null) {
+      // The component patch is a map, so its entries are sorted like any other compound.
+      String components = meta.getAsComponentString();
+      if (components.length() > 1 && components.charAt(0) == '[') {
+        components = components.substring(1, components.length() - 1);
+      }
+      for (String entry : normalizeEntries(components, true)) {
+        builder.append('\n').append(entry);
+      }
+    }
+
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static @NotNull List<String> normalizeEntries(@NotNull String value, boolean sort) {
+    List<String> entries = new ArrayList<>();
+    int start = 0;
+    int index = 0;
+    while (index < value.length()) {
+      char character = value.charAt(index);
+      if (character == ',') {
+        addEntry(entries, value.substring(start, index));
+        start = ++index;
+      } else if (isQuote(character)) {
+        index = skipQuoted(value, index);
+      } else if (isOpen(character)) {
+        int close = findClose(value, index);
+        index = close < 0 ? value.length() : close + 1;
+      } else {
+        ++index;
+      }
+    }
+    addEntry(entries, value.substring(start));
+
+    if (sort) {
+      Collections.sort(entries);
+    }
+    return entries;
+  }
+
+  private static void addEntry(@NotNull List<String> entries, @NotNull String entry) {
+    entry = entry.strip();
+    if (!entry.isEmpty()) {
+      entries.add(normalizeValue(entry));
+    }
+  }
+
+  private static @NotNull String normalizeValue(@NotNull String value) {
+    StringBuilder builder = new StringBuilder(value.length());
+    int index = 0;
+    while (index < value.length()) {
+      char character = value.charAt(index);
+      if (isQuote(character)) {
+        int end = skipQuoted(value, index);
+        builder.append(value, index, end);
+        index = end;
+      } else if (isOpen(character)) {
+        int close = findClose(value, index);
+        if (close < 0) {
+          // Unbalanced input is kept as-is rather than failing to hash.
+          builder.append(value, index, value.length());
+          break;
+        }
+        // Only compounds are unordered.
+        List<String> entries = normalizeEntries(value.substring(index + 1, close), character == '{');
+        builder.append(character).append(String.join(",", entries)).append(value.charAt(close));
+        index = close + 1;
+      } else {
+        builder.append(character);
+        ++index;
+      }
+    }
+    return builder.toString();
+  }
+
+  private static int findClose(@NotNull String value, int open) {
+    int depth = 0;
+    int index = open;
+    while (index < value.length()) {
+      char character = value.charAt(index);
+      if (isQuote(character)) {
+        index = skipQuoted(value, index);
+        continue;
+      }
+      if (isOpen(character)) {
+        ++depth;
+      } else if (isClose(character) && --depth == 0) {
+        return index;
+      }
+      ++index;
+    }
+    return -1;
+  }
+
+  private static int skipQuoted(@NotNull String value, int quote) {
+    char quoteChar = value.charAt(quote);
+    int index = quote + 1;
+    while (index < value.length()) {
+      char character = value.charAt(index);
+      if (character == '\\') {
+        index += 2;
+      } else if (character == quoteChar) {
+        return index + 1;
+      } else {
+        ++index;
+      }
+    }
+    return value.length();
+  }
+
+  private static boolean isQuote(char character) {
+    return character == '"' || character == '\'';
+  }
+
+  private static boolean isOpen(char character) {
+    return character == '{' || character == '[' || character == '(';
+  }
+
+  private static boolean isClose(char character) {
+    return character == '}' || character == ']' || character == ')';
+  }
+
+}
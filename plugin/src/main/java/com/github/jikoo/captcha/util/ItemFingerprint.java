@@ -0,0 +1,186 @@
+package com.github.jikoo.captcha.util;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A non-cryptographic 128-bit fingerprint of item data.
+ *
+ * <p>Fingerprints are calculated using MurmurHash3 (x64, 128-bit variant) and encoded as a version
+ * digit and separator followed by two fixed-width base 36 halves. Legacy hashes are variable-length
+ * base 36 MD5 values and never contain the separator, so all formats can share a namespace.
+ *
+ * @param version the version of the data the fingerprint was calculated from
+ * @param high the high 64 bits
+ * @param low the low 64 bits
+ */
+public record ItemFingerprint(int version, long high, long low) {
+
+  /** The version of legacy MD5 hashes. */
+  public static final int LEGACY = 0;
+  /** The version of fingerprints of an item's serialized bytes, which vary with the data version. */
+  public static final int SERIALIZED = 1;
+  /** The version of fingerprints of an item's {@link CanonicalItem canonical form}. */
+  public static final int CANONICAL = 2;
+
+  private static final char SEPARATOR = '_';
+  private static final int HALF_LENGTH = 13;
+  private static final long C1 = 0x87C37B91114253D5L;
+  private static final long C2 = 0x4CF5AD432745937FL;
+  private static final VarHandle LONG_LE =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /**
+   * Calculate the fingerprint of serialized data.
+   *
+   * @param data the data
+   * @return the fingerprint
+   */
+  @Contract(pure = true)
+  public static @NotNull ItemFingerprint of(byte @NotNull [] data) {
+    return of(SERIALIZED, data);
+  }
+
+  /**
+   * Calculate the fingerprint of data.
+   *
+   * @param version the version of the data
+   * @param data the data
+   * @return the fingerprint
+   */
+  @Contract(pure = true)
+  public static @NotNull ItemFingerprint of(int version, byte @NotNull [] data) {
+    if (version <= LEGACY || version > 9) {
+      throw new IllegalArgumentException("Invalid fingerprint version " + version);
+    }
+
+    long h1 = 0;
+    long h2 = 0;
+    int length = data.length;
+    int blockEnd = length & ~15;
+
+    for (int offset = 0; offset < blockEnd; offset += 16) {
+      long k1 = (long) LONG_LE.get(data, offset);
+      long k2 = (long) LONG_LE.get(data, offset + 8);
+
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27) + h2;
+      h1 = h1 * 5 + 0x52DCE729;
+
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31) + h1;
+      h2 = h2 * 5 + 0x38495AB5;
+    }
+
+    // Mix in any trailing bytes.
+    int remaining = length & 15;
+    if (remaining > 8) {
+      long k2 = 0;
+      for (int i = remaining - 1; i >= 8; --i) {
+        k2 ^= (data[blockEnd + i] & 0xFFL) << ((i - 8) << 3);
+      }
+      h2 ^= mixK2(k2);
+    }
+    if (remaining > 0) {
+      long k1 = 0;
+      for (int i = Math.min(remaining, 8) - 1; i >= 0; --i) {
+        k1 ^= (data[blockEnd + i] & 0xFFL) << (i << 3);
+      }
+      h1 ^= mixK1(k1);
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+
+    return new ItemFingerprint(version, h1, h2);
+  }
+
+  /**
+   * Get the version of the data a hash was calculated from.
+   *
+   * @param hash the hash
+   * @return the version, or {@link #LEGACY} if the hash is a legacy MD5 hash
+   */
+  @Contract(pure = true)
+  public static int getVersion(@NotNull String hash) {
+    if (hash.length() < 2 || hash.charAt(1) != SEPARATOR) {
+      return LEGACY;
+    }
+    return Math.max(LEGACY, Character.digit(hash.charAt(0), 10));
+  }
+
+  /**
+   * Check if a hash is a legacy MD5 hash rather than an encoded fingerprint.
+   *
+   * @param hash the hash
+   * @return true if the hash is a legacy hash
+   */
+  @Contract(pure = true)
+  public static boolean isLegacy(@NotNull String hash) {
+    return getVersion(hash) == LEGACY;
+  }
+
+  /**
+   * Get the fingerprint following this one. Used to probe past collisions.
+   *
+   * @return the next fingerprint
+   */
+  @Contract(pure = true)
+  public @NotNull ItemFingerprint next() {
+    long nextLow = low + 1;
+    return new ItemFingerprint(version, nextLow == 0 ? high + 1 : high, nextLow);
+  }
+
+  /**
+   * Encode the fingerprint as a hash string.
+   *
+   * @return the encoded fingerprint
+   */
+  @Contract(pure = true)
+  public @NotNull String encode() {
+    char[] chars = new char[2 + HALF_LENGTH * 2];
+    chars[0] = Character.forDigit(version, 10);
+    chars[1] = SEPARATOR;
+    encodeHalf(high, chars, 2);
+    encodeHalf(low, chars, 2 + HALF_LENGTH);
+    return new String(chars);
+  }
+
+  private static void encodeHalf(long value, char @NotNull [] chars, int offset) {
+    for (int i = offset + HALF_LENGTH - 1; i >= offset; --i) {
+      chars[i] = Character.forDigit((int) Long.remainderUnsigned(value, Character.MAX_RADIX), Character.MAX_RADIX);
+      value = Long.divideUnsigned(value, Character.MAX_RADIX);
+    }
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    return k1 * C2;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    return k2 * C1;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xFF51AFD7ED558CCDL;
+    k ^= k >>> 33;
+    k *= 0xC4CEB9FE1A85EC53L;
+    return k ^ (k >>> 33);
+  }
+
+}
@@ -16,7 +16,13 @@ public class ItemNameReplacement extends SimpleReplacement {
     super(placeholder, getNameString(itemStack));
   }
 
-  private static @NotNull String getNameString(@NotNull ItemStack itemStack) {
+  /**
+   * Get the display name of an item in MiniMessage format.
+   *
+   * @param itemStack the item
+   * @return the name of the item
+   */
+  public static @NotNull String getNameString(@NotNull ItemStack itemStack) {
     if (itemStack.hasItemMeta()) {
       ItemMeta itemMeta = itemStack.getItemMeta();
       if (itemMeta != null && itemMeta.hasCustomName()) {
@@ -50,6 +50,19 @@ public enum Messages {
   /// Success message for obtaining a captchacard by ID.
   public static final @NotNull Message COMMAND_GET_SUCCESS;
 
+  /// Statistics for a cache tier.
+  public static final @NotNull Message COMMAND_STATS_CACHE;
+  /// Statistics for operation counts.
+  public static final @NotNull Message COMMAND_STATS_OPERATIONS;
+  /// Statistics for a timed operation.
+  public static final @NotNull Message COMMAND_STATS_LATENCY;
+  /// Statistics for storage throughput.
+  public static final @NotNull Message COMMAND_STATS_STORAGE;
+  /// Statistics for prefetching.
+  public static final @NotNull Message COMMAND_STATS_PREFETCH;
+  /// Statistics for archived storage.
+  public static final @NotNull Message COMMAND_STATS_ARCHIVE;
+
   private static final List<Message> messages = new ArrayList<>();
   private static final List<Message> colors = new ArrayList<>();
 
@@ -83,6 +96,13 @@ public enum Messages {
 
     COMMAND_GET_DENIAL_INVALID = register("command.get.denial.invalid", "{color.value}Hash not in use!");
     COMMAND_GET_SUCCESS = register("command.get.success", "{color.background}Captcha get!");
+
+    COMMAND_STATS_CACHE = register("command.stats.cache", "{color.background}{tier} cache: {color.value}{hitRate}%{color.background} of {color.value}{requests}{color.background} requests hit, {color.value}{evictions}{color.background} evictions");
+    COMMAND_STATS_OPERATIONS = register("command.stats.operations", "{color.background}Captures: {color.value}{captures}{color.background}, opens: {color.value}{opens}{color.background}, collision probes: {color.value}{probes}{color.background}, pending writes: {color.value}{pending}");
+    COMMAND_STATS_LATENCY = register("command.stats.latency", "{color.background}{operation}: {color.value}{count}{color.background} ops, mean {color.value}{mean}ms{color.background}, p99 {color.value}{p99}ms");
+    COMMAND_STATS_STORAGE = register("command.stats.storage", "{color.background}Storage: {color.value}{read}{color.background} read, {color.value}{written}{color.background} written");
+    COMMAND_STATS_PREFETCH = register("command.stats.prefetch", "{color.background}Prefetch: {color.value}{count}{color.background} loaded, {color.value}{skipped}{color.background} skipped, {color.value}{dropped}{color.background} rate limited, {color.value}{hitRate}%{color.background} of {color.value}{lookups}{color.background} lookups ready");
+    COMMAND_STATS_ARCHIVE = register("command.stats.archive", "{color.background}Archive: {color.value}{records}{color.background} records in {color.value}{packs}{color.background} packs, {color.value}{coldHits}{color.background} cold hits, {color.value}{coldHitRate}%{color.background} of storage reads");
   }
 
   @Contract(pure = true)
@@ -0,0 +1,24 @@
+plugins {
+  id("java")
+  id("application")
+}
+
+repositories {
+  mavenCentral()
+  maven("https://repo.papermc.io/repository/maven-public/")
+  maven("https://jitpack.io")
+}
+
+dependencies {
+  compileOnly(libs.annotations)
+  // Only the server-independent storage classes are used.
+  implementation(project(":captchaplugin"))
+  runtimeOnly(libs.sqlite.jdbc)
+  runtimeOnly(libs.zstd.jni)
+}
+
+application {
+  mainClass = "com.github.jikoo.captcha.scanner.WorldScanner"
+  // Decompression buffers are per thread; large worlds are scanned with many threads.
+  applicationDefaultJvmArgs = listOf("-Xmx2G")
+}
@@ -0,0 +1,132 @@
+package com.github.jikoo.captcha.scanner;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * A reusable decompressor for chunk and player data.
+ *
+ * <p>Each instance holds an inflater and an output buffer that grows to fit the largest data seen,
+ * so a scan thread allocates almost nothing per chunk. Instances are not thread safe.
+ */
+final class ChunkDecompressor implements AutoCloseable {
+
+  private static final int INITIAL_BUFFER = 1 << 20;
+
+  private final @NotNull Inflater inflater = new Inflater();
+  private byte @NotNull [] buffer = new byte[INITIAL_BUFFER];
+
+  /**
+   * Get the buffer holding the most recent output.
+   *
+   * @return the output buffer
+   */
+  byte @NotNull [] buffer() {
+    return buffer;
+  }
+
+  /**
+   * Decompress zlib data into the output buffer.
+   *
+   * @param input the compressed data; its position is advanced past consumed input
+   * @return the length of the decompressed data
+   * @throws DataFormatException if the data is malformed or truncated
+   */
+  int inflate(@NotNull ByteBuffer input) throws DataFormatException {
+    inflater.reset();
+    inflater.setInput(input);
+    int length = 0;
+    while (!inflater.finished()) {
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      int read = inflater.inflate(buffer, length, buffer.length - length);
+      if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+        throw new DataFormatException("Truncated zlib data");
+      }
+      length += read;
+    }
+    return length;
+  }
+
+  /**
+   * Decompress GZIP data into the output buffer.
+   *
+   * @param input the compressed data
+   * @return the length of the decompressed data
+   * @throws IOException if the data is malformed or truncated
+   */
+  int gunzip(@NotNull ByteBuffer input) throws IOException {
+    // GZIP is only used for player data and rare chunks, so a stream is simpler than parsing headers.
+    try (InputStream stream = new GZIPInputStream(new ByteBufferInputStream(input))) {
+      return readFully(stream);
+    }
+  }
+
+  /**
+   * Copy uncompressed data into the output buffer.
+   *
+   * @param input the data
+   * @return the length of the data
+   */
+  int copy(@NotNull ByteBuffer input) {
+    int length = input.remaining();
+    if (length > buffer.length) {
+      buffer = new byte[Integer.highestOneBit(length - 1) << 1];
+    }
+    input.get(buffer, 0, length);
+    return length;
+  }
+
+  private int readFully(@NotNull InputStream stream) throws IOException {
+    int length = 0;
+    while (true) {
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      int read = stream.read(buffer, length, buffer.length - length);
+      if (read < 0) {
+        return length;
+      }
+      length += read;
+    }
+  }
+
+  @Override
+  public void close() {
+    inflater.end();
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final @NotNull ByteBuffer buffer;
+
+    private ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte @NotNull [] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      length = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, length);
+      return length;
+    }
+
+  }
+
+}
@@ -0,0 +1,89 @@
+package com.github.jikoo.captcha.scanner;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Extraction of captchacard hashes from uncompressed NBT without parsing it.
+ *
+ * <p>A card's hash is stored in its persistent data container as a string tag named
+ * {@code captcha:hash}. Wherever the card is held, whether in a chunk's block entities, an entity,
+ * a player's inventory, or a container item, that tag is written as the same run of bytes: the
+ * string tag type, the name length, and the name. Searching for the run finds every card without
+ * walking the tag tree.
+ */
+public enum HashExtractor {
+  ;
+
+  private static final byte TAG_STRING = 8;
+  private static final byte[] NAME = "captcha:hash".getBytes(StandardCharsets.US_ASCII);
+  private static final int HEADER_LENGTH = 3 + NAME.length;
+  private static final int MAX_HASH_LENGTH = 64;
+
+  /**
+   * Find all captchacard hashes in uncompressed NBT data.
+   *
+   * @param data the buffer containing the data
+   * @param length the length of the data in the buffer
+   * @param consumer the consumer of found hashes
+   * @return the number of hashes found
+   */
+  public static int extract(byte @NotNull [] data, int length, @NotNull Consumer<String> consumer) {
+    int found = 0;
+    // The header is followed by at least the length of the value.
+    int last = length - HEADER_LENGTH - 2;
+    for (int index = 0; index <= last; ++index) {
+      // Check the first name byte before the tag type; it is far rarer in item data.
+      if (data[index + 3] != NAME[0] || data[index] != TAG_STRING || !matchesName(data, index)) {
+        continue;
+      }
+
+      int valueStart = index + HEADER_LENGTH + 2;
+      int valueLength = ((data[valueStart - 2] & 0xFF) << 8) | (data[valueStart - 1] & 0xFF);
+      if (valueLength == 0 || valueLength > MAX_HASH_LENGTH || valueStart + valueLength > length) {
+        continue;
+      }
+
+      String hash = readHash(data, valueStart, valueLength);
+      if (hash != null) {
+        consumer.accept(hash);
+        ++found;
+        index = valueStart + valueLength - 1;
+      }
+    }
+    return found;
+  }
+
+  private static boolean matchesName(byte @NotNull [] data, int index) {
+    if (data[index + 1] != 0 || data[index + 2] != NAME.length) {
+      return false;
+    }
+    for (int offset = 1; offset < NAME.length; ++offset) {
+      if (data[index + 3 + offset] != NAME[offset]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static @Nullable String readHash(byte @NotNull [] data, int start, int length) {
+    // Hashes are base 36 with an optional separator; anything else is a coincidental match.
+    for (int index = start; index < start + length; ++index) {
+      if (!isHashCharacter(data[index])) {
+        return null;
+      }
+    }
+    return new String(data, start, length, StandardCharsets.US_ASCII);
+  }
+
+  private static boolean isHashCharacter(byte character) {
+    return character >= '0' && character <= '9'
+        || character >= 'a' && character <= 'z'
+        || character == '_'
+        || character == '-';
+  }
+
+}
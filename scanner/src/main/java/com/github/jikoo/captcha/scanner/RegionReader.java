@@ -0,0 +1,145 @@
+package com.github.jikoo.captcha.scanner;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+
+/**
+ * A reader for Anvil region files.
+ *
+ * <p>A region file starts with a table of 1024 chunk locations, each a sector offset and count in
+ * 4KiB sectors. Each chunk is prefixed by its length and compression type. Chunks too large for
+ * the region are flagged and stored beside it in a {@code c.<x>.<z>.mcc} file.
+ *
+ * <p>Files are memory-mapped, so only the sectors of present chunks are ever paged in.
+ */
+final class RegionReader {
+
+  private static final int SECTOR_SIZE = 4096;
+  private static final int CHUNKS = 1024;
+  private static final int COMPRESSION_GZIP = 1;
+  private static final int COMPRESSION_ZLIB = 2;
+  private static final int COMPRESSION_NONE = 3;
+  private static final int FLAG_EXTERNAL = 128;
+  private static final Pattern REGION_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+  private final @NotNull ChunkDecompressor decompressor;
+  private final @NotNull ScanStats stats;
+
+  RegionReader(@NotNull ChunkDecompressor decompressor, @NotNull ScanStats stats) {
+    this.decompressor = decompressor;
+    this.stats = stats;
+  }
+
+  /**
+   * Decompress every chunk in a region file.
+   *
+   * @param region the region file
+   * @param consumer the consumer of decompressed chunk data
+   * @throws IOException if the region file cannot be read
+   */
+  void read(@NotNull Path region, @NotNull ChunkConsumer consumer) throws IOException {
+    MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(region, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < SECTOR_SIZE) {
+        // Empty regions are created and left behind when chunks are only loaded.
+        return;
+      }
+      // The mapping remains valid after the channel is closed.
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    stats.addBytesRead(mapped.capacity());
+
+    for (int index = 0; index < CHUNKS; ++index) {
+      int location = mapped.getInt(index * 4);
+      if (location == 0) {
+        continue;
+      }
+
+      long start = (long) (location >>> 8) * SECTOR_SIZE;
+      if (start + 5 > mapped.capacity()) {
+        stats.addCorruptChunk(region + " chunk " + index + ": offset out of bounds");
+        continue;
+      }
+
+      int length = mapped.getInt((int) start);
+      int type = mapped.get((int) start + 4) & 0xFF;
+      ByteBuffer data;
+      if ((type & FLAG_EXTERNAL) != 0) {
+        type &= ~FLAG_EXTERNAL;
+        data = readExternal(region, index);
+        if (data == null) {
+          stats.addCorruptChunk(region + " chunk " + index + ": missing external chunk file");
+          continue;
+        }
+      } else {
+        if (length < 1 || start + 4 + length > mapped.capacity()) {
+          stats.addCorruptChunk(region + " chunk " + index + ": length out of bounds");
+          continue;
+        }
+        data = mapped.slice((int) start + 5, length - 1);
+      }
+
+      try {
+        int decompressed = switch (type) {
+          case COMPRESSION_ZLIB -> decompressor.inflate(data);
+          case COMPRESSION_GZIP -> decompressor.gunzip(data);
+          case COMPRESSION_NONE -> decompressor.copy(data);
+          default -> -1;
+        };
+        if (decompressed < 0) {
+          // LZ4 and custom compression would need third-party codecs.
+          stats.addUnsupportedChunk(type);
+          continue;
+        }
+        stats.addChunk(decompressed);
+        consumer.accept(decompressor.buffer(), decompressed);
+      } catch (DataFormatException | IOException e) {
+        stats.addCorruptChunk(region + " chunk " + index + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private static @Nullable ByteBuffer readExternal(@NotNull Path region, int index) throws IOException {
+    Matcher matcher = REGION_NAME.matcher(region.getFileName().toString());
+    if (!matcher.matches()) {
+      return null;
+    }
+    int chunkX = Integer.parseInt(matcher.group(1)) * 32 + (index & 31);
+    int chunkZ = Integer.parseInt(matcher.group(2)) * 32 + (index >> 5);
+    try {
+      return ByteBuffer.wrap(Files.readAllBytes(region.resolveSibling("c." + chunkX + "." + chunkZ + ".mcc")));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A consumer of decompressed chunk data.
+   */
+  @FunctionalInterface
+  interface ChunkConsumer {
+
+    /**
+     * Accept decompressed data. The buffer is reused once this returns.
+     *
+     * @param data the buffer containing the data
+     * @param length the length of the data
+     */
+    void accept(byte @NotNull [] data, int length);
+
+  }
+
+}
@@ -0,0 +1,100 @@
+package com.github.jikoo.captcha.scanner;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by all scan threads.
+ */
+final class ScanStats {
+
+  private static final int MAX_REPORTED_PROBLEMS = 100;
+
+  private final AtomicInteger filesScanned = new AtomicInteger();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder bytesDecompressed = new LongAdder();
+  private final LongAdder chunks = new LongAdder();
+  private final LongAdder cards = new LongAdder();
+  private final LongAdder problemCount = new LongAdder();
+  private final @NotNull Map<Integer, LongAdder> unsupported = new ConcurrentHashMap<>();
+  private final @NotNull List<String> problems = new ArrayList<>();
+
+  void addFileScanned() {
+    filesScanned.incrementAndGet();
+  }
+
+  void addBytesRead(long bytes) {
+    bytesRead.add(bytes);
+  }
+
+  void addChunk(int decompressedBytes) {
+    chunks.increment();
+    bytesDecompressed.add(decompressedBytes);
+  }
+
+  void addCards(int found) {
+    cards.add(found);
+  }
+
+  void addUnsupportedChunk(int compressionType) {
+    unsupported.computeIfAbsent(compressionType, key -> new LongAdder()).increment();
+  }
+
+  void addCorruptChunk(@NotNull String description) {
+    addProblem(description);
+  }
+
+  void addProblem(@NotNull String description) {
+    problemCount.increment();
+    synchronized (problems) {
+      // Keep the report readable for badly damaged worlds; the total is still counted.
+      if (problems.size() < MAX_REPORTED_PROBLEMS) {
+        problems.add(description);
+      }
+    }
+  }
+
+  int getFilesScanned() {
+    return filesScanned.get();
+  }
+
+  long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  long getBytesDecompressed() {
+    return bytesDecompressed.sum();
+  }
+
+  long getChunks() {
+    return chunks.sum();
+  }
+
+  long getCards() {
+    return cards.sum();
+  }
+
+  long getProblemCount() {
+    return problemCount.sum();
+  }
+
+  @NotNull List<String> getProblems() {
+    synchronized (problems) {
+      return List.copyOf(problems);
+    }
+  }
+
+  @NotNull Map<Integer, Long> getUnsupported() {
+    Map<Integer, Long> counts = new TreeMap<>();
+    unsupported.forEach((type, count) -> counts.put(type, count.sum()));
+    return counts;
+  }
+
+}
@@ -0,0 +1,159 @@
+package com.github.jikoo.captcha.scanner;
+
+import com.github.jikoo.captcha.store.Archive;
+import com.github.jikoo.captcha.store.CaptchaRecord;
+import com.github.jikoo.captcha.store.CaptchaStore;
+import com.github.jikoo.captcha.store.CompressedStore;
+import com.github.jikoo.captcha.store.LegacyFileMigrator;
+import com.github.jikoo.captcha.store.NestedReference;
+import com.github.jikoo.captcha.store.StorageBackend;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Resolution of world references against a card store.
+ *
+ * <p>Cards found in the world may hold other cards that only exist inside the store: nested
+ * records reference an inner hash, aliases redirect to the hash their contents moved to, and items
+ * such as shulker boxes may contain further cards. All of those are followed so that the reference
+ * set covers every record reachable from the world.
+ */
+final class StoreReferences implements AutoCloseable {
+
+  private static final String LEGACY_EXTENSION = ".nbt";
+
+  private final @NotNull Path storeDir;
+  private final @NotNull CaptchaStore store;
+  private final @NotNull Archive archive;
+  private final @NotNull LegacyFileMigrator legacy;
+  private final @NotNull ChunkDecompressor decompressor = new ChunkDecompressor();
+  private final @NotNull ScanStats stats;
+
+  StoreReferences(
+      @NotNull Path storeDir,
+      @NotNull StorageBackend backend,
+      @NotNull ScanStats stats,
+      @NotNull Logger logger
+  ) throws IOException {
+    this.storeDir = storeDir;
+    this.stats = stats;
+    if (!Files.isDirectory(storeDir)) {
+      throw new IOException("Not a directory: " + storeDir);
+    }
+    // Writes are never issued, so the segment size limit and compression settings are irrelevant.
+    this.store = new CompressedStore(backend.create(storeDir, Long.MAX_VALUE, logger), false, 0, logger);
+    this.store.open();
+    this.archive = new Archive(storeDir.resolve("archive"), logger);
+    this.archive.open();
+    this.legacy = new LegacyFileMigrator(storeDir, store, logger);
+  }
+
+  /**
+   * Get every hash held by the store, including archived records and legacy files not yet migrated.
+   *
+   * @return the stored hashes
+   * @throws IOException if the legacy directory cannot be listed
+   */
+  @NotNull Set<String> getStored() throws IOException {
+    Set<String> stored = new HashSet<>(store.keys());
+    stored.addAll(archive.keys());
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(storeDir, "*" + LEGACY_EXTENSION)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        stored.add(name.substring(0, name.length() - LEGACY_EXTENSION.length()));
+      }
+    }
+    return stored;
+  }
+
+  /**
+   * Expand a set of hashes found in the world to every hash reachable through the store.
+   *
+   * @param found the hashes found in the world
+   * @param missing the collection to add referenced hashes with no stored record to
+   * @return all referenced hashes
+   */
+  @NotNull Set<String> resolve(@NotNull Collection<String> found, @NotNull Collection<String> missing) {
+    Set<String> referenced = new HashSet<>(found);
+    Deque<String> pending = new ArrayDeque<>(found);
+    while (!pending.isEmpty()) {
+      String hash = pending.poll();
+      byte[] data;
+      try {
+        data = read(hash);
+      } catch (IOException e) {
+        stats.addProblem("Store record " + hash + ": " + e.getMessage());
+        continue;
+      }
+      if (data == null) {
+        missing.add(hash);
+        continue;
+      }
+
+      try {
+        for (String inner : getInnerHashes(data)) {
+          if (referenced.add(inner)) {
+            pending.add(inner);
+          }
+        }
+      } catch (IOException e) {
+        stats.addProblem("Store record " + hash + ": " + e.getMessage());
+      }
+    }
+    return referenced;
+  }
+
+  private byte @Nullable [] read(@NotNull String hash) throws IOException {
+    byte[] data = store.get(hash);
+    if (data == null) {
+      data = archive.get(hash);
+    }
+    if (data != null) {
+      return data;
+    }
+    try {
+      return Files.readAllBytes(legacy.getLegacyPath(hash));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private @NotNull Set<String> getInnerHashes(byte @NotNull [] data) throws IOException {
+    CaptchaRecord captchaRecord = CaptchaRecord.decode(data);
+    return switch (captchaRecord.kind()) {
+      case ALIAS -> Set.of(captchaRecord.aliasTarget());
+      case NESTED -> {
+        NestedReference reference = captchaRecord.reference();
+        yield reference == null ? Set.of() : Set.of(reference.hash());
+      }
+      case ITEM -> {
+        // Serialized items are always GZIP data.
+        int length = decompressor.gunzip(ByteBuffer.wrap(captchaRecord.item()));
+        Set<String> inner = new HashSet<>();
+        HashExtractor.extract(decompressor.buffer(), length, inner::add);
+        yield inner;
+      }
+    };
+  }
+
+  @Override
+  public void close() throws IOException {
+    decompressor.close();
+    archive.close();
+    store.close();
+  }
+
+}
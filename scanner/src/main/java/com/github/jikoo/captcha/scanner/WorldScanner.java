@@ -0,0 +1,306 @@
+package com.github.jikoo.captcha.scanner;
+
+import com.github.jikoo.captcha.store.StorageBackend;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * An offline scanner that finds every captchacard referenced by a world.
+ *
+ * <p>Region files of chunks and entities, along with player data, are read directly rather than
+ * through a server, so a full world can be scanned in minutes. Files are scanned in parallel, each
+ * by a single thread reusing its decompression buffers. Card hashes are found by searching the
+ * decompressed data rather than parsing it; see {@link HashExtractor}.
+ *
+ * <p>If a card store is given, references are resolved through it and two reports are written:
+ * the stored records no card refers to, and the referenced hashes with no stored record.
+ *
+ * <p>The server must be stopped while scanning. Chunks held in memory by a running server are not
+ * yet saved, and the store may not be opened by two processes at once.
+ */
+public final class WorldScanner {
+
+  private static final String USAGE = """
+      Usage: WorldScanner <world directory>... [options]
+        --store <directory>   the plugin data directory to resolve references against
+        --backend <name>      the storage backend configured for the store, default segment
+        --output <directory>  the directory to write reports to, default the working directory
+        --threads <count>     the number of files to scan at once, default the processor count""";
+  private static final String REFERENCED_FILE = "referenced.txt";
+  private static final String ORPHANED_FILE = "orphaned.txt";
+  private static final String MISSING_FILE = "missing.txt";
+  private static final long PROGRESS_INTERVAL = 10;
+
+  private final @NotNull List<Path> worlds;
+  private final @Nullable Path storeDir;
+  private final @NotNull StorageBackend backend;
+  private final @NotNull Path outputDir;
+  private final int threads;
+  private final @NotNull ScanStats stats = new ScanStats();
+  private final @NotNull Set<String> found = ConcurrentHashMap.newKeySet();
+  private final @NotNull Logger logger = Logger.getLogger("WorldScanner");
+
+  private WorldScanner(
+      @NotNull List<Path> worlds,
+      @Nullable Path storeDir,
+      @NotNull StorageBackend backend,
+      @NotNull Path outputDir,
+      int threads
+  ) {
+    this.worlds = worlds;
+    this.storeDir = storeDir;
+    this.backend = backend;
+    this.outputDir = outputDir;
+    this.threads = threads;
+  }
+
+  public static void main(String @NotNull [] args) {
+    List<Path> worlds = new ArrayList<>();
+    Path storeDir = null;
+    StorageBackend backend = StorageBackend.SEGMENT;
+    Path outputDir = Path.of("");
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    try {
+      for (int i = 0; i < args.length; ++i) {
+        switch (args[i]) {
+          case "--store" -> storeDir = Path.of(args[++i]);
+          case "--backend" -> backend = StorageBackend.valueOf(args[++i].toUpperCase(Locale.ROOT));
+          case "--output" -> outputDir = Path.of(args[++i]);
+          case "--threads" -> threads = Math.max(1, Integer.parseInt(args[++i]));
+          case "--help", "-h" -> {
+            System.out.println(USAGE);
+            return;
+          }
+          default -> worlds.add(Path.of(args[i]));
+        }
+      }
+    } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      worlds.clear();
+    }
+
+    if (worlds.isEmpty()) {
+      System.err.println(USAGE);
+      System.exit(1);
+      return;
+    }
+
+    try {
+      new WorldScanner(worlds, storeDir, backend, outputDir, threads).run();
+    } catch (IOException | UncheckedIOException | UnsupportedOperationException e) {
+      System.err.println("Scan failed: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private void run() throws IOException {
+    long start = System.nanoTime();
+    List<Path> files = findFiles();
+    System.err.printf("Scanning %d files with %d threads.%n", files.size(), threads);
+
+    scan(files);
+
+    System.err.printf(
+        "Scanned %d chunks (%s read, %s decompressed) in %ds, found %d cards with %d distinct hashes.%n",
+        stats.getChunks(),
+        formatBytes(stats.getBytesRead()),
+        formatBytes(stats.getBytesDecompressed()),
+        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+        stats.getCards(),
+        found.size());
+
+    Files.createDirectories(outputDir);
+    if (storeDir == null) {
+      writeHashes(outputDir.resolve(REFERENCED_FILE), found);
+    } else {
+      resolve(storeDir);
+    }
+
+    stats.getUnsupported().forEach((type, count) -> System.err.printf(
+        "Skipped %d chunks with unsupported compression type %d. Their cards are not counted.%n",
+        count,
+        type));
+    if (stats.getProblemCount() > 0) {
+      System.err.printf("Encountered %d problems:%n", stats.getProblemCount());
+      stats.getProblems().forEach(problem -> System.err.println("  " + problem));
+    }
+  }
+
+  private @NotNull List<Path> findFiles() throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (Path world : worlds) {
+      if (!Files.isDirectory(world)) {
+        throw new IOException("Not a directory: " + world);
+      }
+      try (Stream<Path> stream = Files.walk(world)) {
+        stream.filter(WorldScanner::isScannable).forEach(files::add);
+      }
+    }
+    // Start the largest files first so one slow region does not finish alone.
+    files.sort(Comparator.comparingLong(WorldScanner::size).reversed());
+    return files;
+  }
+
+  private static boolean isScannable(@NotNull Path path) {
+    Path parent = path.getParent();
+    if (parent == null || !Files.isRegularFile(path)) {
+      return false;
+    }
+    String name = path.getFileName().toString();
+    String directory = parent.getFileName().toString();
+    // Points of interest never hold items.
+    return name.endsWith(".mca") && (directory.equals("region") || directory.equals("entities"))
+        || name.endsWith(".dat") && directory.equals("playerdata");
+  }
+
+  private static long size(@NotNull Path path) {
+    try {
+      return Files.size(path);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private void scan(@NotNull List<Path> files) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ScanThreadFactory());
+    ThreadLocal<ChunkDecompressor> decompressors = ThreadLocal.withInitial(ChunkDecompressor::new);
+    ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Scan Progress");
+      thread.setDaemon(true);
+      return thread;
+    });
+    progress.scheduleAtFixedRate(
+        () -> System.err.printf(
+            "%d/%d files, %s decompressed, %d cards found.%n",
+            stats.getFilesScanned(),
+            files.size(),
+            formatBytes(stats.getBytesDecompressed()),
+            stats.getCards()),
+        PROGRESS_INTERVAL,
+        PROGRESS_INTERVAL,
+        TimeUnit.SECONDS);
+
+    try {
+      List<Future<?>> futures = new ArrayList<>(files.size());
+      for (Path file : files) {
+        futures.add(executor.submit(() -> scanFile(file, decompressors.get())));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Scan interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Scan failed", e.getCause());
+    } finally {
+      progress.shutdownNow();
+      executor.shutdownNow();
+    }
+  }
+
+  private void scanFile(@NotNull Path file, @NotNull ChunkDecompressor decompressor) {
+    try {
+      if (file.getFileName().toString().endsWith(".dat")) {
+        int length = decompressor.gunzip(ByteBuffer.wrap(Files.readAllBytes(file)));
+        stats.addBytesRead(Files.size(file));
+        stats.addChunk(length);
+        stats.addCards(HashExtractor.extract(decompressor.buffer(), length, found::add));
+      } else {
+        new RegionReader(decompressor, stats).read(
+            file,
+            (data, length) -> stats.addCards(HashExtractor.extract(data, length, found::add)));
+      }
+    } catch (IOException e) {
+      // One unreadable file should not discard the rest of the scan.
+      stats.addProblem(file + ": " + e.getMessage());
+    }
+    stats.addFileScanned();
+  }
+
+  private void resolve(@NotNull Path storeDir) throws IOException {
+    long start = System.nanoTime();
+    Set<String> missing = new TreeSet<>();
+    Set<String> referenced;
+    Set<String> orphaned;
+    try (StoreReferences store = new StoreReferences(storeDir, backend, stats, logger)) {
+      referenced = store.resolve(found, missing);
+      orphaned = store.getStored();
+    }
+    orphaned.removeAll(referenced);
+
+    writeHashes(outputDir.resolve(REFERENCED_FILE), referenced);
+    writeHashes(outputDir.resolve(ORPHANED_FILE), orphaned);
+    writeHashes(outputDir.resolve(MISSING_FILE), missing);
+
+    System.err.printf(
+        "Resolved %d referenced records in %dms: %d orphaned, %d missing.%n",
+        referenced.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+        orphaned.size(),
+        missing.size());
+    if (!orphaned.isEmpty()) {
+      // Cards may also be held where no world file can see them.
+      System.err.println(
+          "Orphaned records may still be held by other plugins' storage; verify before deleting them.");
+    }
+  }
+
+  private static void writeHashes(@NotNull Path path, @NotNull Collection<String> hashes) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      for (String hash : new TreeSet<>(hashes)) {
+        writer.write(hash);
+        writer.newLine();
+      }
+    }
+    System.err.printf("Wrote %d hashes to %s.%n", hashes.size(), path.toAbsolutePath());
+  }
+
+  private static @NotNull String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + "B";
+    }
+    int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+    return String.format("%.1f%ciB", bytes / (double) (1L << (unit * 10)), "KMGTPE".charAt(unit - 1));
+  }
+
+  private static final class ScanThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public @NotNull Thread newThread(@NotNull Runnable runnable) {
+      Thread thread = new Thread(runnable, "Scan #" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
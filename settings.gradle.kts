@@ -6,3 +6,9 @@ project(":captchaplugin").projectDir = file("plugin")
 
 include(":captchapack")
 project(":captchapack").projectDir = file("rpack")
+
+include(":captchabenchmark")
+project(":captchabenchmark").projectDir = file("benchmark")
+
+include(":captchascanner")
+project(":captchascanner").projectDir = file("scanner")